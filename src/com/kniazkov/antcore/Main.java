@@ -23,6 +23,7 @@ import com.kniazkov.antcore.basic.graph.Program;
 import com.kniazkov.antcore.basic.common.SyntaxError;
 import com.kniazkov.antcore.basic.parser.Parser;
 import com.kniazkov.antcore.lib.FileIO;
+import com.kniazkov.antcore.runtime.LaunchOptions;
 import com.kniazkov.antcore.runtime.Launcher;
 
 /**
@@ -30,6 +31,17 @@ import com.kniazkov.antcore.runtime.Launcher;
  */
 public class Main {
     public static void main(String[] args) {
+        LaunchOptions options = new LaunchOptions();
+        for (String arg : args) {
+            switch (arg) {
+                case "--async-web-sessions":
+                    options.setAsynchronousWebSessions(true);
+                    break;
+                default:
+                    System.err.println("Unknown argument: '" + arg + '\'');
+                    return;
+            }
+        }
         String source = FileIO.readFileToString("program.txt");
         if (source != null) {
             try {
@@ -37,7 +49,7 @@ public class Main {
                 Analyzer.analyze(program);
                 System.out.println(program.toSourceCode());
                 CompiledProgram compiledProgram = program.compile();
-                Launcher.launch(compiledProgram);
+                Launcher.launch(compiledProgram, options);
             } catch (SyntaxError syntaxError) {
                 syntaxError.printStackTrace();
             }
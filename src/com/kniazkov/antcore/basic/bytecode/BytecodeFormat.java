@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.bytecode;
+
+import com.kniazkov.antcore.lib.ByteList;
+
+/**
+ * The format of instructions in the code segment
+ */
+public enum BytecodeFormat {
+    /**
+     * Each instruction takes 16 bytes (the legacy format)
+     */
+    FIXED,
+
+    /**
+     * An instruction contains the opcode and only the parameters that the opcode uses,
+     * the code segment begins with the signature byte
+     */
+    COMPACT;
+
+    public static final byte COMPACT_SIGNATURE = (byte) 0xFF;
+
+    /**
+     * @return address of the first instruction
+     */
+    public int getCodeStart() {
+        return this == COMPACT ? 1 : 0;
+    }
+
+    /**
+     * Detects the format of bytecode
+     * @param bytecode the bytecode
+     * @return the format
+     */
+    public static BytecodeFormat detect(ByteList bytecode) {
+        return bytecode.size() > 0 && bytecode.get(0) == COMPACT_SIGNATURE ? COMPACT : FIXED;
+    }
+}
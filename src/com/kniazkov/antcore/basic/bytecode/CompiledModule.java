@@ -22,10 +22,11 @@ import com.kniazkov.antcore.lib.ByteList;
  * The compiled module
  */
 public class CompiledModule {
-    public CompiledModule(String executor, String name, ByteList bytecode) {
+    public CompiledModule(String executor, String name, ByteList bytecode, boolean registerMode) {
         this.executor = executor;
         this.name = name;
         this.bytecode = bytecode;
+        this.registerMode = registerMode;
     }
 
     public String getExecutor() {
@@ -40,7 +41,15 @@ public class CompiledModule {
         return bytecode;
     }
 
+    /**
+     * @return true if the module was compiled in the register mode, i.e. contains three-address instructions
+     */
+    public boolean isRegisterMode() {
+        return registerMode;
+    }
+
     private String executor;
     private String name;
     private ByteList bytecode;
+    private boolean registerMode;
 }
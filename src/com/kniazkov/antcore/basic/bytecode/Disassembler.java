@@ -26,17 +26,36 @@ import java.lang.reflect.Type;
 public class Disassembler {
     public static String convert(ByteList src) {
         int size = src.size();
+        BytecodeFormat format = BytecodeFormat.detect(src);
         Instruction inst = new Instruction();
         Formatter formatter = new Formatter();
-        for (int address = 0; address < size; address = address + 16) {
-            inst.read(src, address);
+        int address = format.getCodeStart();
+        while (address < size) {
+            int instSize = inst.read(src, address, format);
             decoders[inst.opcode].decode(address, inst, formatter);
             if (inst.opcode == OpCode.END)
                 break;
+            address = address + instSize;
         }
         return formatter.toString();
     }
 
+    private static String operationToString(byte operation) {
+        switch (operation) {
+            case OpCode.ADD:
+                return "ADD";
+            case OpCode.SUB:
+                return "SUB";
+            case OpCode.MUL:
+                return "MUL";
+            case OpCode.DIV:
+                return "DIV";
+            case OpCode.MOD:
+                return "MOD";
+        }
+        return "?";
+    }
+
     static class Formatter {
         public Formatter() {
             buff = new StringBuilder();
@@ -152,7 +171,10 @@ public class Disassembler {
                 buff.add(a, "DUP", null, null, null, i.x0);
             },
             (a, i, buff) -> { // 6 -> CALL
-                buff.add(a, "CALL", FunctionSelector.toString(i.p0), null, null, i.x0);
+                if (i.p0 == FunctionSelector.NATIVE)
+                    buff.add(a, "CALL", FunctionSelector.toString(i.p0), null, null, i.x0, i.x1);
+                else
+                    buff.add(a, "CALL", FunctionSelector.toString(i.p0), null, null, i.x0);
             },
             (a, i, buff) -> { // 7 -> RET
                 buff.add(a, "RET");
@@ -212,12 +234,30 @@ public class Disassembler {
             (a, i, buff) -> { // 25 -> JUMP
                 buff.add(a, "JUMP", null, null, null, i.x0);
             },
-            stub,
-            stub,
-            stub,
-            stub,
-            stub, // 30
-            stub,
+            (a, i, buff) -> { // 26 -> ADD_LOCAL_IMM
+                if (i.p0 == TypeSelector.LONG)
+                    buff.add(a, "ADD.LI", TypeSelector.toString(i.p0), null, null, i.x0, i.x1, i.x2);
+                else
+                    buff.add(a, "ADD.LI", TypeSelector.toString(i.p0), null, null, i.x0, i.x1);
+            },
+            (a, i, buff) -> { // 27 -> ADD_LOCALS
+                buff.add(a, "ADD.LL", TypeSelector.toString(i.p0), null, null, i.x0, i.x1, i.x2);
+            },
+            (a, i, buff) -> { // 28 -> CMP_LOCAL_IMM_JUMP
+                buff.add(a, "IF.CLI", TypeSelector.toString(i.p0), ComparatorSelector.toString(i.p1),
+                        i.p2 > 0 ? "TRUE" : "FALSE", i.x0, i.x1, i.x2);
+            },
+            (a, i, buff) -> { // 29 -> CMP_IMM_JUMP
+                buff.add(a, "IF.CI", TypeSelector.toString(i.p0), ComparatorSelector.toString(i.p1),
+                        i.p2 > 0 ? "TRUE" : "FALSE", i.x0, i.x1);
+            },
+            (a, i, buff) -> { // 30 -> CALC
+                buff.add(a, "CALC", TypeSelector.toString(i.p0), operationToString(i.p1),
+                        OperandSelector.toString(i.p2), i.x0, i.x1, i.x2);
+            },
+            (a, i, buff) -> { // 31 -> CONCAT
+                buff.add(a, "CONCAT", null, null, null, i.x0, i.x1, i.x2);
+            },
             stub,
             stub,
             stub,
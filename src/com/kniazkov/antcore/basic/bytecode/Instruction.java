@@ -20,7 +20,8 @@ import com.kniazkov.antcore.lib.ByteBuffer;
 import com.kniazkov.antcore.lib.ByteList;
 
 /**
- * Set of bytes that represents an instruction. Each instruction takes 16 bytes.
+ * Set of bytes that represents an instruction. In the fixed format each instruction takes 16 bytes,
+ * in the compact format an instruction contains the opcode and only the parameters that the opcode uses.
  */
 public class Instruction {
     public byte opcode;
@@ -62,4 +63,161 @@ public class Instruction {
         x1 = buff.getInt(index + 8);
         x2 = buff.getInt(index + 12);
     }
+
+    /**
+     * @param format the format
+     * @return size of the instruction in bytes
+     */
+    public int getSize(BytecodeFormat format) {
+        if (format == BytecodeFormat.FIXED)
+            return 16;
+        int layout = getLayout(opcode, p0);
+        return 1 + Integer.bitCount(layout & (P0 | P1 | P2)) + 4 * Integer.bitCount(layout & (X0 | X1 | X2));
+    }
+
+    /**
+     * Write bytecode to the buffer
+     * @param buff the buffer
+     * @param index the starting index
+     * @param format the format
+     * @return size of the instruction in bytes
+     */
+    public int write(ByteBuffer buff, int index, BytecodeFormat format) {
+        if (format == BytecodeFormat.FIXED) {
+            write(buff, index);
+            return 16;
+        }
+        int layout = getLayout(opcode, p0);
+        int position = index;
+        buff.set(position++, opcode);
+        if ((layout & P0) != 0)
+            buff.set(position++, p0);
+        if ((layout & P1) != 0)
+            buff.set(position++, p1);
+        if ((layout & P2) != 0)
+            buff.set(position++, p2);
+        if ((layout & X0) != 0) {
+            buff.setInt(position, x0);
+            position += 4;
+        }
+        if ((layout & X1) != 0) {
+            buff.setInt(position, x1);
+            position += 4;
+        }
+        if ((layout & X2) != 0) {
+            buff.setInt(position, x2);
+            position += 4;
+        }
+        return position - index;
+    }
+
+    /**
+     * Read bytecode from the buffer
+     * @param buff the buffer
+     * @param index the starting index
+     * @param format the format
+     * @return size of the instruction in bytes
+     */
+    public int read(ByteList buff, int index, BytecodeFormat format) {
+        if (format == BytecodeFormat.FIXED) {
+            read(buff, index);
+            return 16;
+        }
+        int position = index;
+        opcode = buff.get(position++);
+        p0 = 0;
+        p1 = 0;
+        p2 = 0;
+        x0 = 0;
+        x1 = 0;
+        x2 = 0;
+        if ((getLayout(opcode, (byte) 0) & P0) != 0)
+            p0 = buff.get(position++);
+        int layout = getLayout(opcode, p0);
+        if ((layout & P1) != 0)
+            p1 = buff.get(position++);
+        if ((layout & P2) != 0)
+            p2 = buff.get(position++);
+        if ((layout & X0) != 0) {
+            x0 = buff.getInt(position);
+            position += 4;
+        }
+        if ((layout & X1) != 0) {
+            x1 = buff.getInt(position);
+            position += 4;
+        }
+        if ((layout & X2) != 0) {
+            x2 = buff.getInt(position);
+            position += 4;
+        }
+        return position - index;
+    }
+
+    /**
+     * Returns the parameters that an instruction uses, the set depends only on the opcode and the 'p0' parameter,
+     * so the size of an instruction never depends on addresses
+     * @param opcode the opcode
+     * @param p0 the first parameter
+     * @return set of flags P0...X2
+     */
+    private static int getLayout(byte opcode, byte p0) {
+        switch (opcode) {
+            case OpCode.LOAD:
+                if (p0 == DataSelector.ZERO)
+                    return P0 | X0;
+                if (p0 == DataSelector.IMMEDIATE)
+                    return P0 | X0 | X1 | X2;
+                return P0 | X0 | X1;
+            case OpCode.STORE:
+                return P0 | X0 | X1;
+            case OpCode.CAST:
+                return P0 | P1 | X0 | X1;
+            case OpCode.POP:
+            case OpCode.DUP:
+            case OpCode.ENTER:
+            case OpCode.LEAVE:
+            case OpCode.JUMP:
+                return X0;
+            case OpCode.CALL:
+                return p0 == FunctionSelector.NATIVE ? P0 | X0 | X1 : P0 | X0;
+            case OpCode.IF:
+                return P0 | X0;
+            case OpCode.ADD:
+                return p0 == TypeSelector.STRING ? P0 | X0 | X1 | X2 : P0;
+            case OpCode.CMP:
+                return p0 == TypeSelector.STRING ? P0 | P1 | X0 | X1 : P0 | P1;
+            case OpCode.SUB:
+            case OpCode.MUL:
+            case OpCode.DIV:
+            case OpCode.MOD:
+            case OpCode.AND:
+            case OpCode.OR:
+            case OpCode.XOR:
+            case OpCode.SHL:
+            case OpCode.SHR:
+            case OpCode.NEG:
+            case OpCode.NOT:
+            case OpCode.SIGN:
+                return P0;
+            case OpCode.ADD_LOCAL_IMM:
+                return p0 == TypeSelector.LONG ? P0 | X0 | X1 | X2 : P0 | X0 | X1;
+            case OpCode.ADD_LOCALS:
+                return P0 | X0 | X1 | X2;
+            case OpCode.CMP_LOCAL_IMM_JUMP:
+            case OpCode.CALC:
+                return P0 | P1 | P2 | X0 | X1 | X2;
+            case OpCode.CMP_IMM_JUMP:
+                return P0 | P1 | P2 | X0 | X1;
+            case OpCode.CONCAT:
+                return X0 | X1 | X2;
+        }
+        return 0;
+    }
+
+    private static final int P0 = 1;
+    private static final int P1 = 2;
+    private static final int P2 = 4;
+    private static final int X0 = 8;
+    private static final int X1 = 16;
+    private static final int X2 = 32;
 }
@@ -46,5 +46,11 @@ public final class OpCode {
     public static final byte SIGN = 23;
     public static final byte IF = 24;
     public static final byte JUMP = 25;
+    public static final byte ADD_LOCAL_IMM = 26;
+    public static final byte ADD_LOCALS = 27;
+    public static final byte CMP_LOCAL_IMM_JUMP = 28;
+    public static final byte CMP_IMM_JUMP = 29;
+    public static final byte CALC = 30;
+    public static final byte CONCAT = 31;
     public static final byte END = 127;
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.bytecodebuilder;
+
+import com.kniazkov.antcore.basic.bytecode.Instruction;
+import com.kniazkov.antcore.basic.bytecode.OpCode;
+
+/**
+ * Add an immediate value to a local variable (superinstruction)
+ */
+public class AddLocalImmediate extends RawInstruction {
+    public AddLocalImmediate(byte selector, int offset, long value) {
+        this.selector = selector;
+        this.offset = offset;
+        this.value = value;
+    }
+
+    @Override
+    public Instruction generate() {
+        Instruction i = new Instruction();
+        i.opcode = OpCode.ADD_LOCAL_IMM;
+        i.p0 = selector;
+        i.x0 = offset;
+        i.x1 = (int) value;
+        i.x2 = (int) (value >> 32);
+        return i;
+    }
+
+    private byte selector;
+    private int offset;
+    private long value;
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.bytecodebuilder;
+
+import com.kniazkov.antcore.basic.bytecode.FunctionSelector;
+import com.kniazkov.antcore.basic.bytecode.Instruction;
+import com.kniazkov.antcore.basic.bytecode.OpCode;
+import com.kniazkov.antcore.basic.common.Offset;
+
+/**
+ * Call the native function by its index, the name of the function is used
+ * to bind the index when the code is loaded
+ */
+public class CallNative extends RawInstruction {
+    public CallNative(int index, Offset segment, Offset name) {
+        this.index = index;
+        this.segment = segment;
+        this.name = name;
+    }
+
+    @Override
+    public Instruction generate() {
+        Instruction i = new Instruction();
+        i.opcode = OpCode.CALL;
+        i.p0 = FunctionSelector.NATIVE;
+        i.x0 = index;
+        i.x1 = segment.get() + name.get();
+        return i;
+    }
+
+    private int index;
+    private Offset segment;
+    private Offset name;
+}
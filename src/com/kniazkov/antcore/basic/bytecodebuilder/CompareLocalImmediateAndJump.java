@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.bytecodebuilder;
+
+import com.kniazkov.antcore.basic.bytecode.Instruction;
+import com.kniazkov.antcore.basic.bytecode.OpCode;
+import com.kniazkov.antcore.basic.common.Offset;
+
+/**
+ * Compare a local variable with an immediate value and jump to address
+ * if the result is true/false (superinstruction)
+ */
+public class CompareLocalImmediateAndJump extends RawInstruction implements Branch {
+    public CompareLocalImmediateAndJump(byte typeSelector, byte comparatorSelector, boolean condition,
+                                        int offset, int value, Offset address) {
+        this.typeSelector = typeSelector;
+        this.comparatorSelector = comparatorSelector;
+        this.condition = condition;
+        this.offset = offset;
+        this.value = value;
+        this.address = address;
+    }
+
+    @Override
+    public Instruction generate() {
+        Instruction i = new Instruction();
+        i.opcode = OpCode.CMP_LOCAL_IMM_JUMP;
+        i.p0 = typeSelector;
+        i.p1 = comparatorSelector;
+        i.p2 = (byte) (condition ? 1 : 0);
+        i.x0 = address.get();
+        i.x1 = offset;
+        i.x2 = value;
+        return i;
+    }
+
+    @Override
+    public Offset getTarget() {
+        return address;
+    }
+
+    @Override
+    public void setTarget(Offset address) {
+        this.address = address;
+    }
+
+    private byte typeSelector;
+    private byte comparatorSelector;
+    private boolean condition;
+    private int offset;
+    private int value;
+    private Offset address;
+}
@@ -16,8 +16,10 @@
  */
 package com.kniazkov.antcore.basic.bytecodebuilder;
 
+import com.kniazkov.antcore.basic.bytecode.BytecodeFormat;
+import com.kniazkov.antcore.basic.bytecode.Instruction;
+import com.kniazkov.antcore.basic.common.CompilerOptions;
 import com.kniazkov.antcore.basic.common.DeferredOffset;
-import com.kniazkov.antcore.basic.common.FixedOffset;
 import com.kniazkov.antcore.basic.common.Offset;
 import com.kniazkov.antcore.basic.graph.Function;
 import com.kniazkov.antcore.basic.graph.Module;
@@ -25,8 +27,12 @@ import com.kniazkov.antcore.lib.ByteBuffer;
 import com.kniazkov.antcore.lib.ByteList;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /*
  The memory model:
@@ -48,19 +54,27 @@ public class CompilationUnit {
         }
     }
 
-    public CompilationUnit(Module module, StaticDataBuilder staticData) {
+    public CompilationUnit(Module module, StaticDataBuilder staticData, CompilerOptions options) {
         this.module = module;
+        this.options = options;
         instructions = new ArrayList<>();
         this.staticData = staticData;
         staticDataOffset = new SegmentOffset();
         dynamicDataOffset = new SegmentOffset();
         notCompiledButUsedFunctions = new LinkedList<>();
+        labels = new ArrayList<>();
+        pendingLabels = new ArrayList<>();
+        nativeFunctions = new HashMap<>();
     }
 
     public Module getModule() {
         return module;
     }
 
+    public CompilerOptions getOptions() {
+        return options;
+    }
+
     public Offset getStaticDataOffset() {
         return staticDataOffset;
     }
@@ -82,13 +96,30 @@ public class CompilationUnit {
      * @return a bytecode as list of bytes
      */
     public ByteList getBytecode() {
+        BytecodeFormat format = options.getBytecodeFormat();
         int count = instructions.size();
-        int size = count * 16 + staticData.getSize();
-        ByteBuffer buff = new ByteBuffer(size);
+
+        // size of an instruction does not depend on addresses, so instructions are generated
+        // with provisional addresses first to calculate the real ones
+        int[] addresses = new int[count];
+        int address = format.getCodeStart();
+        for (int k = 0; k < count; k++) {
+            addresses[k] = address;
+            address += instructions.get(k).generate().getSize(format);
+        }
+        for (int k = 0; k < count; k++)
+            instructions.get(k).setAddress(addresses[k]);
+        codeSize = address;
+        updateSegmentOffsets();
+
+        ByteBuffer buff = new ByteBuffer(codeSize + staticData.getSize());
 
         // code
+        if (format == BytecodeFormat.COMPACT)
+            buff.set(0, BytecodeFormat.COMPACT_SIGNATURE);
         for (int k = 0; k < count; k++) {
-            instructions.get(k).generate().write(buff, k * 16);
+            Instruction instruction = instructions.get(k).generate();
+            instruction.write(buff, addresses[k], format);
         }
 
         // data
@@ -97,23 +128,145 @@ public class CompilationUnit {
     }
 
     private void updateSegmentOffsets() {
-        staticDataOffset.value = instructions.size() * 16;
+        staticDataOffset.value = codeSize;
         dynamicDataOffset.value = staticDataOffset.value + staticData.getSize();
     }
 
+    /**
+     * Sets addresses of instructions as if the code has the fixed format,
+     * real addresses are calculated when the bytecode is generated
+     */
+    private void setProvisionalAddresses() {
+        int count = instructions.size();
+        for (int k = 0; k < count; k++)
+            instructions.get(k).setAddress(k * 16);
+        codeSize = count * 16;
+        updateSegmentOffsets();
+    }
+
     public void addInstruction(RawInstruction item) {
+        if (displacement != null && !(item instanceof Branch))
+            item = new DisplacedInstruction(item, displacement);
         int count = instructions.size();
         instructions.add(item);
-        item.setIndex(count);
+        item.setAddress(count * 16);
+        codeSize = (count + 1) * 16;
+        for (Label label : pendingLabels)
+            label.setTarget(item);
+        pendingLabels.clear();
         updateSegmentOffsets();
     }
 
+    /**
+     * Removes instructions, labels that refer to them are moved to the next instructions
+     * @param removed the instructions
+     */
+    public void removeInstructions(Set<RawInstruction> removed) {
+        Map<RawInstruction, RawInstruction> replacements = new IdentityHashMap<>();
+        List<RawInstruction> kept = new ArrayList<>(instructions.size());
+        List<RawInstruction> skipped = new ArrayList<>();
+        for (RawInstruction instruction : instructions) {
+            if (removed.contains(instruction)) {
+                skipped.add(instruction);
+                continue;
+            }
+            for (RawInstruction item : skipped)
+                replacements.put(item, instruction);
+            skipped.clear();
+            kept.add(instruction);
+        }
+        // labels that refer to the removed tail of the code will refer to the next instruction
+        for (Label label : labels) {
+            if (skipped.contains(label.getTarget())) {
+                label.setTarget(null);
+                pendingLabels.add(label);
+            }
+        }
+        instructions = kept;
+        replaceTargets(replacements);
+        setProvisionalAddresses();
+    }
+
+    /**
+     * Starts the body of a function that is inlined into the function being compiled.
+     * Until the end of inlining, addresses of local data of the added instructions are shifted by the displacement,
+     * so the frame of the inlined function becomes a part of the frame of the caller
+     * @param displacement position of the frame of the inlined function relative to the frame of the caller
+     * @param exit address of the code that follows the inlined body, returns jump there
+     */
+    public void beginInlining(Offset displacement, Offset exit) {
+        assert (this.displacement == null);
+        this.displacement = displacement;
+        this.exit = exit;
+    }
+
+    /**
+     * Finishes the body of an inlined function
+     */
+    public void endInlining() {
+        displacement = null;
+        exit = null;
+    }
+
+    /**
+     * @return true if the body of an inlined function is being compiled
+     */
+    public boolean isInlining() {
+        return displacement != null;
+    }
+
+    /**
+     * @return address of the code that follows the body of the inlined function or null if nothing is inlined
+     */
+    public Offset getInlineExit() {
+        return exit;
+    }
+
+    /**
+     * @return address of the next instruction, it remains valid after optimization
+     */
     public Offset getCurrentAddress() {
-        return new FixedOffset(instructions.size() * 16);
+        Label label = new Label();
+        labels.add(label);
+        pendingLabels.add(label);
+        return label;
     }
 
+    /**
+     * Resolves a deferred offset by address of the next instruction
+     * @param offset the offset
+     */
     public void resolveAddress(DeferredOffset offset) {
-        offset.resolve(instructions.size() * 16);
+        offset.resolve(getCurrentAddress());
+    }
+
+    /**
+     * Optimizes the code, must be called after the last instruction was added
+     */
+    public void optimize() {
+        assert (pendingLabels.isEmpty());
+        Map<RawInstruction, RawInstruction> replacements = new IdentityHashMap<>();
+        instructions = ControlFlowOptimizer.optimize(instructions, replacements);
+        replaceTargets(replacements);
+        setProvisionalAddresses();
+
+        Set<RawInstruction> targets = new ControlFlowGraph(instructions).getTargetInstructions();
+        replacements.clear();
+        instructions = PeepholeOptimizer.optimize(instructions, targets, replacements);
+        replaceTargets(replacements);
+        setProvisionalAddresses();
+    }
+
+    /**
+     * Moves labels from replaced or removed instructions
+     * @param replacements map of instructions and their replacements
+     */
+    private void replaceTargets(Map<RawInstruction, RawInstruction> replacements) {
+        for (Label label : labels) {
+            RawInstruction replacement = replacements.get(label.getTarget());
+            if (replacement != null)
+                label.setTarget(replacement);
+        }
     }
 
     public Offset getStringOffset(String string) {
@@ -122,10 +275,37 @@ public class CompilationUnit {
         return offset;
     }
 
+    /**
+     * Returns the index of a native function, indexes are assigned in order of the first call
+     * @param name the name of the function
+     * @return the index
+     */
+    public int getNativeFunctionIndex(String name) {
+        Integer index = nativeFunctions.get(name);
+        if (index == null) {
+            index = nativeFunctions.size();
+            nativeFunctions.put(name, index);
+        }
+        return index;
+    }
+
+    public Offset getTableOffset(List<Integer> table) {
+        Offset offset = staticData.getTableOffset(table);
+        updateSegmentOffsets();
+        return offset;
+    }
+
     private Module module;
+    private CompilerOptions options;
     private List<RawInstruction> instructions;
     private StaticDataBuilder staticData;
     private SegmentOffset staticDataOffset;
     private SegmentOffset dynamicDataOffset;
     private LinkedList<Function> notCompiledButUsedFunctions;
+    private List<Label> labels;
+    private List<Label> pendingLabels;
+    private int codeSize;
+    private Map<String, Integer> nativeFunctions;
+    private Offset displacement;
+    private Offset exit;
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.bytecodebuilder;
+
+import com.kniazkov.antcore.basic.bytecode.Instruction;
+import com.kniazkov.antcore.basic.bytecode.OpCode;
+import com.kniazkov.antcore.basic.common.Offset;
+
+/**
+ * Concatenate several strings from the stack, the first one is on the top, and push the result to the stack.
+ * Sizes of the strings on the stack are taken from a table in the static data
+ */
+public class Concat extends RawInstruction {
+    public Concat(int count, Offset segment, Offset sizes, int totalSize) {
+        assert (count > 1);
+        this.count = count;
+        this.segment = segment;
+        this.sizes = sizes;
+        this.totalSize = totalSize;
+    }
+
+    @Override
+    public Instruction generate() {
+        Instruction i = new Instruction();
+        i.opcode = OpCode.CONCAT;
+        i.x0 = count;
+        i.x1 = segment.get() + sizes.get();
+        i.x2 = totalSize;
+        return i;
+    }
+
+    private int count;
+    private Offset segment;
+    private Offset sizes;
+    private int totalSize;
+}
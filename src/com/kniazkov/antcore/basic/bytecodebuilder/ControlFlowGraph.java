@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.bytecodebuilder;
+
+import com.kniazkov.antcore.basic.bytecode.FunctionSelector;
+import com.kniazkov.antcore.basic.bytecode.Instruction;
+import com.kniazkov.antcore.basic.bytecode.OpCode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The control-flow graph of a list of instructions.
+ * The instructions are divided into basic blocks, a block is entered only through its first instruction
+ * and is left only through its last one.
+ * Each instruction must have an unique address, jumps and calls are resolved by these addresses
+ */
+final class ControlFlowGraph {
+    /**
+     * The basic block, i.e. sequence of instructions without jumps inside
+     */
+    static final class BasicBlock {
+        private BasicBlock(int first, int last) {
+            this.first = first;
+            this.last = last;
+            successors = new ArrayList<>(2);
+        }
+
+        /**
+         * @return index of the first instruction
+         */
+        int getFirst() {
+            return first;
+        }
+
+        /**
+         * @return index of the last instruction
+         */
+        int getLast() {
+            return last;
+        }
+
+        /**
+         * @return blocks that can be executed after this one
+         */
+        List<BasicBlock> getSuccessors() {
+            return successors;
+        }
+
+        /**
+         * @return true if the block can be executed
+         */
+        boolean isReachable() {
+            return reachable;
+        }
+
+        private final int first;
+        private final int last;
+        private final List<BasicBlock> successors;
+        private boolean reachable;
+    }
+
+    /**
+     * Builds the graph
+     * @param instructions list of instructions, the first one is the entry point
+     */
+    ControlFlowGraph(List<RawInstruction> instructions) {
+        this.instructions = instructions;
+        int count = instructions.size();
+        code = new Instruction[count];
+        Map<Integer, Integer> indexes = new HashMap<>();
+        for (int k = 0; k < count; k++) {
+            code[k] = instructions.get(k).generate();
+            indexes.put(instructions.get(k).getAddress(), k);
+        }
+
+        targets = new int[count];
+        boolean[] leaders = new boolean[count + 1];
+        leaders[0] = true;
+        for (int k = 0; k < count; k++) {
+            targets[k] = -1;
+            if (hasTarget(code[k])) {
+                Integer target = indexes.get(code[k].x0);
+                assert (target != null);
+                targets[k] = target;
+                leaders[target] = true;
+                leaders[k + 1] = true;
+            }
+            else if (!hasNext(code[k]))
+                leaders[k + 1] = true;
+        }
+
+        blocks = new ArrayList<>();
+        blockByInstruction = new BasicBlock[count];
+        int first = 0;
+        for (int k = 1; k <= count; k++) {
+            if (leaders[k] || k == count) {
+                BasicBlock block = new BasicBlock(first, k - 1);
+                blocks.add(block);
+                for (int index = first; index < k; index++)
+                    blockByInstruction[index] = block;
+                first = k;
+            }
+        }
+        for (BasicBlock block : blocks) {
+            Instruction last = code[block.last];
+            if (targets[block.last] >= 0 && last.opcode != OpCode.CALL)
+                block.successors.add(blockByInstruction[targets[block.last]]);
+            if (hasNext(last) && block.last + 1 < count)
+                block.successors.add(blockByInstruction[block.last + 1]);
+        }
+        markReachableBlocks();
+    }
+
+    /**
+     * @return basic blocks in order of instructions
+     */
+    List<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * @param index index of an instruction
+     * @return the generated instruction
+     */
+    Instruction getInstruction(int index) {
+        return code[index];
+    }
+
+    /**
+     * @param index index of an instruction
+     * @return index of the instruction to jump or to call, or -1 if the instruction has no target
+     */
+    int getTarget(int index) {
+        return targets[index];
+    }
+
+    /**
+     * @param index index of an instruction
+     * @return true if the instruction can be executed
+     */
+    boolean isReachable(int index) {
+        return blockByInstruction[index].reachable;
+    }
+
+    /**
+     * @return instructions that are targets of jumps and calls
+     */
+    Set<RawInstruction> getTargetInstructions() {
+        Set<RawInstruction> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int target : targets) {
+            if (target >= 0)
+                set.add(instructions.get(target));
+        }
+        return set;
+    }
+
+    /**
+     * Marks blocks reachable from the entry point, the entry of a called function is reachable
+     * if the call is reachable
+     */
+    private void markReachableBlocks() {
+        if (blocks.isEmpty())
+            return;
+        Deque<BasicBlock> queue = new ArrayDeque<>();
+        BasicBlock entry = blocks.get(0);
+        entry.reachable = true;
+        queue.add(entry);
+        while (!queue.isEmpty()) {
+            BasicBlock block = queue.poll();
+            List<BasicBlock> next = new ArrayList<>(block.successors);
+            for (int index = block.first; index <= block.last; index++) {
+                if (code[index].opcode == OpCode.CALL && targets[index] >= 0)
+                    next.add(blockByInstruction[targets[index]]);
+            }
+            for (BasicBlock successor : next) {
+                if (!successor.reachable) {
+                    successor.reachable = true;
+                    queue.add(successor);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param instruction an instruction
+     * @return true if the 'x0' field of the instruction contains an address in the code segment
+     */
+    private static boolean hasTarget(Instruction instruction) {
+        switch (instruction.opcode) {
+            case OpCode.IF:
+            case OpCode.JUMP:
+            case OpCode.CMP_LOCAL_IMM_JUMP:
+            case OpCode.CMP_IMM_JUMP:
+                return true;
+            case OpCode.CALL:
+                return instruction.p0 == FunctionSelector.USER_DEFINED;
+        }
+        return false;
+    }
+
+    /**
+     * @param instruction an instruction
+     * @return true if the next instruction can be executed after this one
+     */
+    private static boolean hasNext(Instruction instruction) {
+        switch (instruction.opcode) {
+            case OpCode.JUMP:
+            case OpCode.RET:
+            case OpCode.END:
+                return false;
+        }
+        return true;
+    }
+
+    private final List<RawInstruction> instructions;
+    private final Instruction[] code;
+    private final int[] targets;
+    private final List<BasicBlock> blocks;
+    private final BasicBlock[] blockByInstruction;
+}
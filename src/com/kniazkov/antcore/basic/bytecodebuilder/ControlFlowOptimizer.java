@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.bytecodebuilder;
+
+import com.kniazkov.antcore.basic.bytecode.OpCode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The optimizer that works with the control-flow graph:
+ *   a jump to an unconditional jump is replaced by a jump to the final target (jump threading);
+ *   basic blocks that can not be executed are removed;
+ *   an unconditional jump to the next instruction is removed.
+ * The END instruction is never removed, it marks the end of the code
+ */
+final class ControlFlowOptimizer {
+    /**
+     * Optimize a list of instructions
+     * @param instructions the list, each instruction must have an unique address
+     * @param replacements map to store each removed instruction and the instruction that follows it
+     * @return optimized list
+     */
+    static List<RawInstruction> optimize(List<RawInstruction> instructions,
+                                         Map<RawInstruction, RawInstruction> replacements) {
+        threadJumps(instructions);
+
+        ControlFlowGraph graph = new ControlFlowGraph(instructions);
+        int count = instructions.size();
+        boolean[] removed = new boolean[count];
+        for (int k = 0; k < count; k++)
+            removed[k] = !graph.isReachable(k) && graph.getInstruction(k).opcode != OpCode.END;
+
+        boolean changed;
+        do {
+            changed = false;
+            for (int k = 0; k < count; k++) {
+                if (!removed[k] && graph.getInstruction(k).opcode == OpCode.JUMP
+                        && graph.getTarget(k) == getNext(removed, k)) {
+                    removed[k] = true;
+                    changed = true;
+                }
+            }
+        } while (changed);
+
+        List<RawInstruction> result = new ArrayList<>(count);
+        RawInstruction next = null;
+        for (int k = count - 1; k >= 0; k--) {
+            RawInstruction instruction = instructions.get(k);
+            if (removed[k]) {
+                if (next != null)
+                    replacements.put(instruction, next);
+            }
+            else {
+                result.add(instruction);
+                next = instruction;
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Redirects each jump whose target is an unconditional jump to the target of that jump
+     * @param instructions the list of instructions
+     */
+    private static void threadJumps(List<RawInstruction> instructions) {
+        ControlFlowGraph graph = new ControlFlowGraph(instructions);
+        int count = instructions.size();
+        for (int k = 0; k < count; k++) {
+            RawInstruction instruction = instructions.get(k);
+            if (!(instruction instanceof Branch))
+                continue;
+            Branch branch = (Branch) instruction;
+            int target = graph.getTarget(k);
+            // the number of steps is limited, so an endless loop of jumps does not hang the compiler
+            for (int step = 0; step < count && target != k
+                    && graph.getInstruction(target).opcode == OpCode.JUMP; step++) {
+                Branch jump = (Branch) instructions.get(target);
+                branch.setTarget(jump.getTarget());
+                target = graph.getTarget(target);
+            }
+        }
+    }
+
+    /**
+     * @param removed flags of removed instructions
+     * @param index index of an instruction
+     * @return index of the next instruction that is not removed or -1
+     */
+    private static int getNext(boolean[] removed, int index) {
+        for (int k = index + 1; k < removed.length; k++) {
+            if (!removed[k])
+                return k;
+        }
+        return -1;
+    }
+}
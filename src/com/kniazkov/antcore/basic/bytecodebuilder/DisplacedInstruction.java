@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.bytecodebuilder;
+
+import com.kniazkov.antcore.basic.bytecode.DataSelector;
+import com.kniazkov.antcore.basic.bytecode.Instruction;
+import com.kniazkov.antcore.basic.bytecode.OpCode;
+import com.kniazkov.antcore.basic.bytecode.OperandSelector;
+import com.kniazkov.antcore.basic.common.Offset;
+
+/**
+ * An instruction of an inlined function, its addresses of local data are shifted
+ * to the frame of the inlined function inside the frame of the caller
+ */
+final class DisplacedInstruction extends RawInstruction {
+    DisplacedInstruction(RawInstruction instruction, Offset displacement) {
+        this.instruction = instruction;
+        this.displacement = displacement;
+    }
+
+    @Override
+    public Instruction generate() {
+        Instruction i = instruction.generate();
+        int value = displacement.get();
+        switch (i.opcode) {
+            case OpCode.LOAD:
+                if (i.p0 == DataSelector.LOCAL || i.p0 == DataSelector.LOCAL_POINTER)
+                    i.x1 += value;
+                break;
+            case OpCode.STORE:
+                if (i.p0 == DataSelector.LOCAL)
+                    i.x1 += value;
+                break;
+            case OpCode.CALC:
+                i.x0 += value;
+                if (i.p2 != OperandSelector.IMMEDIATE_LOCAL)
+                    i.x1 += value;
+                if (i.p2 != OperandSelector.LOCAL_IMMEDIATE)
+                    i.x2 += value;
+                break;
+        }
+        return i;
+    }
+
+    private final RawInstruction instruction;
+    private final Offset displacement;
+}
@@ -23,7 +23,7 @@ import com.kniazkov.antcore.basic.common.Offset;
 /**
  * Jump to address with no conditions
  */
-public class Jump extends RawInstruction {
+public class Jump extends RawInstruction implements Branch {
     public Jump(Offset address) {
         this.address = address;
     }
@@ -36,5 +36,15 @@ public class Jump extends RawInstruction {
         return i;
     }
 
+    @Override
+    public Offset getTarget() {
+        return address;
+    }
+
+    @Override
+    public void setTarget(Offset address) {
+        this.address = address;
+    }
+
     private Offset address;
 }
@@ -23,7 +23,7 @@ import com.kniazkov.antcore.basic.common.Offset;
 /**
  * Jump to address if value on the top of the stack is true/false
  */
-public class JumpIf extends RawInstruction {
+public class JumpIf extends RawInstruction implements Branch {
     public JumpIf(boolean condition, Offset address) {
         this.condition = condition;
         this.address = address;
@@ -38,6 +38,20 @@ public class JumpIf extends RawInstruction {
         return i;
     }
 
+    boolean getCondition() {
+        return condition;
+    }
+
+    @Override
+    public Offset getTarget() {
+        return address;
+    }
+
+    @Override
+    public void setTarget(Offset address) {
+        this.address = address;
+    }
+
     private boolean condition;
     private Offset address;
 }
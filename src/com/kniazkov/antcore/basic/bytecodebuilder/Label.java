@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.bytecodebuilder;
+
+import com.kniazkov.antcore.basic.common.Offset;
+
+/**
+ * Address of an instruction in the code. The label is bound to the instruction rather than to its position,
+ * so the address remains valid when the code is optimized
+ */
+public class Label implements Offset {
+    Label() {
+        target = null;
+    }
+
+    @Override
+    public int get() {
+        assert (target != null);
+        return target.getAddress();
+    }
+
+    RawInstruction getTarget() {
+        return target;
+    }
+
+    void setTarget(RawInstruction target) {
+        this.target = target;
+    }
+
+    private RawInstruction target;
+}
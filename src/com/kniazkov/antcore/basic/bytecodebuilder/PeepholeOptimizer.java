@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.bytecodebuilder;
+
+import com.kniazkov.antcore.basic.bytecode.DataSelector;
+import com.kniazkov.antcore.basic.bytecode.Instruction;
+import com.kniazkov.antcore.basic.bytecode.OpCode;
+import com.kniazkov.antcore.basic.bytecode.TypeSelector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The peephole optimizer, replaces frequent sequences of instructions by superinstructions:
+ *   LOAD VALUE v; LOAD LOCAL a; ADD; STORE LOCAL a  ->  ADD_LOCAL_IMM a, v
+ *   LOAD VALUE v; LOAD LOCAL a; SUB; STORE LOCAL a  ->  ADD_LOCAL_IMM a, -v
+ *   LOAD LOCAL b; LOAD LOCAL c; ADD; STORE LOCAL a  ->  ADD_LOCALS a, c, b
+ *   LOAD VALUE v; LOAD LOCAL a; CMP; IF             ->  CMP_LOCAL_IMM_JUMP
+ *   LOAD VALUE v; CMP; IF                           ->  CMP_IMM_JUMP
+ * A sequence is not replaced if there is a jump to any instruction of it except the first one
+ */
+final class PeepholeOptimizer {
+    /**
+     * Optimize a list of instructions
+     * @param instructions the list
+     * @param targets instructions that are targets of jumps and calls
+     * @param replacements map to store the first instruction of each replaced sequence and its replacement
+     * @return optimized list
+     */
+    static List<RawInstruction> optimize(List<RawInstruction> instructions, Set<RawInstruction> targets,
+                                         Map<RawInstruction, RawInstruction> replacements) {
+        int count = instructions.size();
+        Instruction[] code = new Instruction[count];
+        for (int k = 0; k < count; k++)
+            code[k] = instructions.get(k).generate();
+
+        List<RawInstruction> result = new ArrayList<>(count);
+        int k = 0;
+        while (k < count) {
+            RawInstruction superinstruction = null;
+            int length = 4;
+            if (canReplace(instructions, targets, k, length)) {
+                superinstruction = fuseAddition(code, k);
+                if (superinstruction == null)
+                    superinstruction = fuseCompareLocal(instructions, code, k);
+            }
+            if (superinstruction == null) {
+                length = 3;
+                if (canReplace(instructions, targets, k, length))
+                    superinstruction = fuseCompareImmediate(instructions, code, k);
+            }
+            if (superinstruction != null) {
+                replacements.put(instructions.get(k), superinstruction);
+                result.add(superinstruction);
+                k += length;
+            }
+            else {
+                result.add(instructions.get(k));
+                k++;
+            }
+        }
+        return result;
+    }
+
+    private static boolean canReplace(List<RawInstruction> instructions, Set<RawInstruction> targets,
+                                      int index, int length) {
+        if (index + length > instructions.size())
+            return false;
+        for (int k = index + 1; k < index + length; k++) {
+            if (targets.contains(instructions.get(k)))
+                return false;
+        }
+        return true;
+    }
+
+    private static RawInstruction fuseAddition(Instruction[] code, int index) {
+        Instruction first = code[index];
+        Instruction second = code[index + 1];
+        Instruction operation = code[index + 2];
+        Instruction store = code[index + 3];
+        if (operation.opcode != OpCode.ADD && operation.opcode != OpCode.SUB)
+            return null;
+        int size = getSize(operation.p0);
+        if (size < 0 || operation.x0 != size || operation.x1 != size || operation.x2 != size)
+            return null;
+        if (store.opcode != OpCode.STORE || store.p0 != DataSelector.LOCAL || store.x0 != size)
+            return null;
+        if (!isLoad(first, size) || !isLoad(second, size))
+            return null;
+
+        // the value loaded last is the left operand
+        int destination = store.x1;
+        if (operation.opcode == OpCode.ADD) {
+            if (first.p0 == DataSelector.LOCAL && second.p0 == DataSelector.LOCAL)
+                return new AddLocals(operation.p0, destination, second.x1, first.x1);
+            if (first.p0 == DataSelector.IMMEDIATE && second.p0 == DataSelector.LOCAL && second.x1 == destination)
+                return new AddLocalImmediate(operation.p0, destination, getImmediate(first));
+            if (first.p0 == DataSelector.LOCAL && first.x1 == destination && second.p0 == DataSelector.IMMEDIATE)
+                return new AddLocalImmediate(operation.p0, destination, getImmediate(second));
+        }
+        else {
+            if (first.p0 == DataSelector.IMMEDIATE && second.p0 == DataSelector.LOCAL && second.x1 == destination)
+                return new AddLocalImmediate(operation.p0, destination, -getImmediate(first));
+        }
+        return null;
+    }
+
+    private static RawInstruction fuseCompareLocal(List<RawInstruction> instructions, Instruction[] code,
+                                                   int index) {
+        Instruction first = code[index];
+        Instruction second = code[index + 1];
+        Instruction compare = code[index + 2];
+        RawInstruction jump = instructions.get(index + 3);
+        if (compare.opcode != OpCode.CMP || !(jump instanceof JumpIf))
+            return null;
+        int size = getComparableSize(compare.p0);
+        if (size < 0 || compare.x0 != size || compare.x1 != size)
+            return null;
+        if (!isLoad(first, size) || first.p0 != DataSelector.IMMEDIATE)
+            return null;
+        if (!isLoad(second, size) || second.p0 != DataSelector.LOCAL)
+            return null;
+        JumpIf jumpIf = (JumpIf) jump;
+        return new CompareLocalImmediateAndJump(compare.p0, compare.p1, jumpIf.getCondition(),
+                second.x1, (int) getImmediate(first), jumpIf.getTarget());
+    }
+
+    private static RawInstruction fuseCompareImmediate(List<RawInstruction> instructions, Instruction[] code,
+                                                       int index) {
+        Instruction first = code[index];
+        Instruction compare = code[index + 1];
+        RawInstruction jump = instructions.get(index + 2);
+        if (compare.opcode != OpCode.CMP || !(jump instanceof JumpIf))
+            return null;
+        int size = getComparableSize(compare.p0);
+        if (size < 0 || compare.x0 != size || compare.x1 != size)
+            return null;
+        if (!isLoad(first, size) || first.p0 != DataSelector.IMMEDIATE)
+            return null;
+        JumpIf jumpIf = (JumpIf) jump;
+        return new CompareImmediateAndJump(compare.p0, compare.p1, jumpIf.getCondition(),
+                (int) getImmediate(first), jumpIf.getTarget());
+    }
+
+    /**
+     * @param type a type selector
+     * @return size of an integer type or -1 if the type is not integer
+     */
+    private static int getSize(byte type) {
+        switch (type) {
+            case TypeSelector.BYTE:
+                return 1;
+            case TypeSelector.SHORT:
+                return 2;
+            case TypeSelector.INTEGER:
+                return 4;
+            case TypeSelector.LONG:
+                return 8;
+        }
+        return -1;
+    }
+
+    /**
+     * @param type a type selector
+     * @return size of an integer type that can be compared with a 4-byte immediate value or -1
+     */
+    private static int getComparableSize(byte type) {
+        return type == TypeSelector.LONG ? -1 : getSize(type);
+    }
+
+    private static boolean isLoad(Instruction instruction, int size) {
+        return instruction.opcode == OpCode.LOAD && instruction.x0 == size
+                && (instruction.p0 == DataSelector.LOCAL || instruction.p0 == DataSelector.IMMEDIATE);
+    }
+
+    private static long getImmediate(Instruction instruction) {
+        switch (instruction.x0) {
+            case 1:
+                return (byte) instruction.x1;
+            case 2:
+                return (short) instruction.x1;
+            case 4:
+                return instruction.x1;
+            default:
+                return ((long) instruction.x2 << 32) | (instruction.x1 & 0xFFFFFFFFL);
+        }
+    }
+}
@@ -23,7 +23,7 @@ import com.kniazkov.antcore.basic.bytecode.Instruction;
  */
 public abstract class RawInstruction {
     public RawInstruction() {
-        index = -1;
+        address = -1;
     }
 
     /**
@@ -31,15 +31,14 @@ public abstract class RawInstruction {
      */
     public abstract Instruction generate();
 
-    void setIndex(int index) {
-        assert(this.index < 0);
-        this.index = index;
+    void setAddress(int address) {
+        this.address = address;
     }
 
     public int getAddress() {
-        assert(this.index >= 0);
-        return index * 16;
+        assert(this.address >= 0);
+        return address;
     }
 
-    private int index;
+    private int address;
 }
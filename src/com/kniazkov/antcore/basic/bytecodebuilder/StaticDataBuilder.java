@@ -22,6 +22,7 @@ import com.kniazkov.antcore.basic.graph.Module;
 import com.kniazkov.antcore.lib.ByteBuffer;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -35,6 +36,8 @@ public class StaticDataBuilder {
         staticDataSize = 0;
         stringsList = new ArrayList<>();
         stringsMap = new TreeMap<>();
+        tablesList = new ArrayList<>();
+        tablesMap = new HashMap<>();
     }
 
     /**
@@ -52,6 +55,21 @@ public class StaticDataBuilder {
         return offset;
     }
 
+    /**
+     * Calculate an offset of a table of integers
+     * @param table the table
+     * @return an offset
+     */
+    public Offset getTableOffset(List<Integer> table) {
+        if (tablesMap.containsKey(table))
+            return tablesMap.get(table);
+        Offset offset = new FixedOffset(staticDataSize);
+        staticDataSize += table.size() * 4;
+        tablesList.add(table);
+        tablesMap.put(table, offset);
+        return offset;
+    }
+
     /**
      * Build binary data
      * @param buff the destination buffer
@@ -71,6 +89,13 @@ public class StaticDataBuilder {
                 buff.setChar(index + 8 + k * 2, ch);
             }
         }
+        for (List<Integer> table : tablesList) {
+            int index = tablesMap.get(table).get() + segmentOffset;
+            for (int value : table) {
+                buff.setInt(index, value);
+                index += 4;
+            }
+        }
     }
 
     public Module getModule() {
@@ -85,4 +110,6 @@ public class StaticDataBuilder {
     private int staticDataSize;
     private List<String> stringsList;
     private Map<String, Offset> stringsMap;
+    private List<List<Integer>> tablesList;
+    private Map<List<Integer>, Offset> tablesMap;
 }
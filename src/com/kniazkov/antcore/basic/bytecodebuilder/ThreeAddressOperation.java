@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.bytecodebuilder;
+
+import com.kniazkov.antcore.basic.bytecode.Instruction;
+import com.kniazkov.antcore.basic.bytecode.OpCode;
+import com.kniazkov.antcore.basic.bytecode.TypeSelector;
+
+/**
+ * Calculate an arithmetic operation on local variables or immediate values
+ * and store the result to a local variable (three-address instruction)
+ */
+public class ThreeAddressOperation extends RawInstruction {
+    public ThreeAddressOperation(byte selector, byte operation, byte operands, int destination, int left, int right) {
+        this.selector = selector;
+        assert (selector >= TypeSelector.SHORT && selector <= TypeSelector.LONG);
+        this.operation = operation;
+        assert (operation >= OpCode.ADD && operation <= OpCode.MOD);
+        this.operands = operands;
+        this.destination = destination;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    public Instruction generate() {
+        Instruction i = new Instruction();
+        i.opcode = OpCode.CALC;
+        i.p0 = selector;
+        i.p1 = operation;
+        i.p2 = operands;
+        i.x0 = destination;
+        i.x1 = left;
+        i.x2 = right;
+        return i;
+    }
+
+    private byte selector;
+    private byte operation;
+    private byte operands;
+    private int destination;
+    private int left;
+    private int right;
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.common;
+
+import com.kniazkov.antcore.basic.bytecode.BytecodeFormat;
+
+/**
+ * Options of the compiler
+ */
+public class CompilerOptions {
+    /**
+     * @return true if arithmetic on local variables is compiled to three-address instructions
+     */
+    public boolean isRegisterMode() {
+        return registerMode;
+    }
+
+    /**
+     * Enables or disables the register mode, in this mode arithmetic statements on numeric local variables
+     * are compiled to three-address instructions that address the variables directly,
+     * temporary results are kept in local slots of the function (virtual registers) instead of the stack
+     * @param registerMode true to enable the register mode
+     */
+    public void setRegisterMode(boolean registerMode) {
+        this.registerMode = registerMode;
+    }
+
+    /**
+     * @return the format of generated instructions
+     */
+    public BytecodeFormat getBytecodeFormat() {
+        return bytecodeFormat;
+    }
+
+    /**
+     * Sets the format of generated instructions, the compact format is used by default
+     * @param bytecodeFormat the format
+     */
+    public void setBytecodeFormat(BytecodeFormat bytecodeFormat) {
+        this.bytecodeFormat = bytecodeFormat;
+    }
+
+    /**
+     * @return maximum size of a function that is inlined, 0 if functions are not inlined
+     */
+    public int getInlineThreshold() {
+        return inlineThreshold;
+    }
+
+    /**
+     * Sets maximum size of a function that is inlined, i.e. a call of the function is replaced by its body.
+     * The size is the number of nodes of the syntax tree of the body, recursive functions are never inlined
+     * @param inlineThreshold the threshold, 0 disables inlining
+     */
+    public void setInlineThreshold(int inlineThreshold) {
+        this.inlineThreshold = inlineThreshold;
+    }
+
+    private boolean registerMode = false;
+    private BytecodeFormat bytecodeFormat = BytecodeFormat.COMPACT;
+    private int inlineThreshold = 32;
+}
@@ -28,7 +28,7 @@ public class DeferredOffset implements Offset {
     @Override
     public int get() {
         assert(resolved);
-        return value;
+        return offset != null ? offset.get() : value;
     }
 
     public void resolve(int value) {
@@ -36,6 +36,16 @@ public class DeferredOffset implements Offset {
         resolved = true;
     }
 
+    /**
+     * Resolves the offset by another offset, which can be changed later
+     * @param offset the offset
+     */
+    public void resolve(Offset offset) {
+        this.offset = offset;
+        resolved = true;
+    }
+
     private int value;
+    private Offset offset;
     private boolean resolved;
 }
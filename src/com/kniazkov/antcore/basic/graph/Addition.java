@@ -21,9 +21,14 @@ import com.kniazkov.antcore.basic.common.SyntaxError;
 import com.kniazkov.antcore.basic.bytecode.TypeSelector;
 import com.kniazkov.antcore.basic.bytecodebuilder.Add;
 import com.kniazkov.antcore.basic.bytecodebuilder.CompilationUnit;
+import com.kniazkov.antcore.basic.bytecodebuilder.Concat;
 import com.kniazkov.antcore.basic.exceptions.OperatorNotApplicable;
 import com.kniazkov.antcore.lib.Variant;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+
 /**
  * The node represents addition, i.e. operation '+'
  */
@@ -90,6 +95,15 @@ public class Addition extends BinaryOperation {
         DataType leftType = getLeftPureNonConstantType();
         DataType rightType = getRightPureNonConstantType();
 
+        if (leftType instanceof StringType && rightType instanceof StringType) {
+            List<Expression> parts = new ArrayList<>();
+            collectStringParts(this, parts);
+            if (parts.size() > 2) {
+                genConcatenation(unit, parts);
+                return;
+            }
+        }
+
         right.genLoad(unit);
         left.genLoad(unit);
 
@@ -122,6 +136,42 @@ public class Addition extends BinaryOperation {
         assert(false);
     }
 
+    /**
+     * Collects operands of a chain of string concatenations, such as 'a + b + c'
+     * @param expression an operand
+     * @param parts the list of operands
+     */
+    private static void collectStringParts(Expression expression, List<Expression> parts) throws SyntaxError {
+        Expression inner = expression;
+        while (inner instanceof ParenthesizedExpression)
+            inner = ((ParenthesizedExpression) inner).getExpressions()[0];
+        if (inner instanceof Addition && inner.getType().getPureType() instanceof StringType) {
+            Expression[] operands = ((Addition) inner).getExpressions();
+            collectStringParts(operands[0], parts);
+            collectStringParts(operands[1], parts);
+        }
+        else {
+            parts.add(expression);
+        }
+    }
+
+    /**
+     * Generates one instruction that concatenates all the operands instead of a chain of additions,
+     * so the result is written once
+     * @param unit the compilation unit
+     * @param parts operands of the concatenation
+     */
+    private void genConcatenation(CompilationUnit unit, List<Expression> parts) throws SyntaxError {
+        List<Integer> sizes = new ArrayList<>(parts.size());
+        for (Expression part : parts)
+            sizes.add(part.getType().getSize());
+        ListIterator<Expression> iterator = parts.listIterator(parts.size());
+        while (iterator.hasPrevious())
+            iterator.previous().genLoad(unit);
+        unit.addInstruction(new Concat(parts.size(), unit.getStaticDataOffset(), unit.getTableOffset(sizes),
+                getType().getSize()));
+    }
+
     protected final static int booleanToStrLength = 5; // FALSE
     protected final static int shortToStrLength = 6; // -32768
     protected final static int integerToStrLength = 11; // -2147483648
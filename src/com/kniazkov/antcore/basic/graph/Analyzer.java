@@ -18,6 +18,7 @@ package com.kniazkov.antcore.basic.graph;
 
 import com.kniazkov.antcore.basic.common.SyntaxError;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -33,7 +34,9 @@ public class Analyzer {
         bindTypes(root);
         bindNames(root);
         checkTypes(root);
+        propagateValues(root);
         simplifyExpressions(root);
+        moveLoopInvariants(root);
         buildStaticData(root);
         calculateOffsets(root);
     }
@@ -50,6 +53,34 @@ public class Analyzer {
         }
     }
 
+    /**
+     * Visit all nodes in the syntax tree, nodes that do not belong to modules are visited first,
+     * then the modules are processed in parallel
+     * @param root the root node
+     * @param visitor the visitor, must not have a state
+     */
+    protected static void visitAllByModules(Program root, NodeVisitor visitor) throws SyntaxError {
+        List<Node> list = root.enumerate();
+        for (Node node : list) {
+            if (node instanceof Module)
+                continue;
+            Node owner = node.getOwner();
+            while (owner != null && !(owner instanceof Module))
+                owner = owner.getOwner();
+            if (owner == null)
+                node.accept(visitor);
+        }
+
+        List<ParallelTasks.Task<Void>> tasks = new ArrayList<>();
+        for (Module module : root.getModuleList()) {
+            tasks.add(() -> {
+                visitAll(module, visitor);
+                return null;
+            });
+        }
+        ParallelTasks.run(tasks);
+    }
+
     /**
      * Bind data types by name
      * @param root the root node
@@ -107,9 +138,18 @@ public class Analyzer {
             }
         }
 
+        List<ParallelTasks.Task<Void>> tasks = new ArrayList<>();
         for (Module module : root.getModuleList()) {
-            visitAll(module, new Builder(module));
+            tasks.add(() -> {
+                Builder builder = new Builder(module);
+                visitAll(module, builder);
+                // functions of code blocks are compiled into each module that includes the blocks
+                for (CodeBlock block : root.getCodeBlocksByExecutor(module.getNotNullExecutor()))
+                    visitAll(block, builder);
+                return null;
+            });
         }
+        ParallelTasks.run(tasks);
     }
 
     /**
@@ -226,7 +266,37 @@ public class Analyzer {
             }
         }
 
-        visitAll(root, new Calculator());
+        visitAllByModules(root, new Calculator());
+    }
+
+    /**
+     * Replace uses of local variables by their known values
+     * @param root the root node
+     */
+    protected static void propagateValues(Program root) throws SyntaxError {
+        class Propagator extends NodeVisitor {
+            @Override
+            public void visit(Function obj) throws SyntaxError {
+                ValuePropagation.apply(obj);
+            }
+        }
+
+        visitAll(root, new Propagator());
+    }
+
+    /**
+     * Move expressions that do not change inside loops out of the loops
+     * @param root the root node
+     */
+    protected static void moveLoopInvariants(Program root) throws SyntaxError {
+        class Mover extends NodeVisitor {
+            @Override
+            public void visit(Function obj) throws SyntaxError {
+                LoopInvariantMotion.apply(obj);
+            }
+        }
+
+        visitAll(root, new Mover());
     }
 
     /**
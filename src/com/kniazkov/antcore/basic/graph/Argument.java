@@ -86,6 +86,13 @@ public class Argument extends LeftExpression implements DataTypeOwner {
         return offset;
     }
 
+    /**
+     * @return offset of the argument relative to the local pointer
+     */
+    int getLocalOffset() {
+        return offset + owner.getFunction().getFirstArgumentOffset();
+    }
+
     void setOffset(int offset) {
         assert(this.offset == -1);
         this.offset = offset;
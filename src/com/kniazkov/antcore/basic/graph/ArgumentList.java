@@ -84,6 +84,10 @@ public class ArgumentList extends Node implements ExpressionOwner {
         assert (list.length == 0);
     }
 
+    List<Argument> getArguments() {
+        return argumentList;
+    }
+
     public int getCount() {
         return argumentList.size();
     }
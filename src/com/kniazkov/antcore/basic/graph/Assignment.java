@@ -91,6 +91,8 @@ public class Assignment extends Statement implements ExpressionOwner {
         LeftExpression assignableExpression = left.toLeftExpression();
         if (assignableExpression == null)
             throw new ExpressionCannotBeAssigned(getFragment(), left.toString(), right.toString());
+        if (unit.getOptions().isRegisterMode() && RegisterLowering.genAssignment(unit, getFunction(), left, right))
+            return;
         right.genLoad(unit);
         assignableExpression.genStore(unit);
     }
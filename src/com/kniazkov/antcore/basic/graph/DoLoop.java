@@ -45,6 +45,10 @@ public class DoLoop extends Statement implements ExpressionOwner, StatementListO
         visitor.visit(this);
     }
 
+    StatementList getBody() {
+        return body;
+    }
+
     @Override
     public void compile(CompilationUnit unit) throws SyntaxError {
         Offset begin = unit.getCurrentAddress();
@@ -20,7 +20,7 @@ import com.kniazkov.antcore.basic.common.SyntaxError;
 import com.kniazkov.antcore.lib.Variant;
 
 /**
- * Expression simplification algorithm
+ * Expression simplification algorithm: constant folding and algebraic identities
  */
 public class ExpressionSimplification {
     /**
@@ -36,19 +36,170 @@ public class ExpressionSimplification {
         int k;
         for (k = 0; k < list.length; k++) {
             Expression expression = list[k];
-            if (expression != null && !expression.isAtomic()) {
-                Variant data = expression.calculate();
-                if (!data.isNull()) {
-                    DataType type = expression.getType();
-                    Expression atomic = type.createExpression(data);
-                    if (atomic != null) {
-                        list[k] = atomic;
-                        changes = true;
-                    }
-                }
+            if (expression == null)
+                continue;
+            Expression result = expression.isAtomic() ? expression : fold(expression);
+            if (result == expression)
+                result = simplify(expression);
+            if (result != expression) {
+                list[k] = result;
+                changes = true;
             }
         }
         if (changes)
             node.replaceExpressions(list);
     }
+
+    /**
+     * Replaces an expression by a constant if the value of the expression is known
+     * @param expression the expression
+     * @return a constant or the same expression
+     */
+    private static Expression fold(Expression expression) throws SyntaxError {
+        Variant data = expression.calculate();
+        if (data.isNull())
+            return expression;
+        DataType type = expression.getType();
+        Expression atomic = type.createExpression(data);
+        // the constant can have a narrower type, for example a string of exact length
+        if (atomic != null)
+            atomic = DataTypeCast.cast(type, atomic);
+        return atomic != null ? atomic : expression;
+    }
+
+    /**
+     * Applies algebraic identities to an expression while it is possible
+     * @param expression the expression
+     * @return an equivalent expression or the same expression
+     */
+    private static Expression simplify(Expression expression) throws SyntaxError {
+        Expression result = rewrite(expression);
+        while (result != null) {
+            expression = result;
+            result = rewrite(expression);
+        }
+        return expression;
+    }
+
+    /**
+     * Applies an algebraic identity to an expression: drops neutral operands ('x + 0', 'x * 1', '"" + s'),
+     * replaces 'x - x', 'x * 0' and 'x MOD 1' by zero, removes double negation
+     * and merges constant parts of a string concatenation
+     * @param expression the expression
+     * @return an equivalent expression or null if no identity is applicable
+     */
+    private static Expression rewrite(Expression expression) throws SyntaxError {
+        if (expression instanceof UnaryPlus)
+            return ((UnaryOperation) expression).getExpressions()[0];
+        if (expression instanceof Negation) {
+            Expression operand = skipParentheses(((UnaryOperation) expression).getExpressions()[0]);
+            if (operand instanceof Negation)
+                return ((UnaryOperation) operand).getExpressions()[0];
+            return null;
+        }
+        if (!(expression instanceof BinaryOperation))
+            return null;
+
+        DataType type = expression.getType().getPureType();
+        if (type instanceof ConstantModifier)
+            type = ((ConstantModifier) type).getNonConstantType();
+        Expression[] operands = ((BinaryOperation) expression).getExpressions();
+        Expression left = operands[0];
+        Expression right = operands[1];
+        Variant leftValue = left.calculate();
+        Variant rightValue = right.calculate();
+
+        if (type instanceof StringType) {
+            if (!(expression instanceof Addition))
+                return null;
+            if (isEmptyString(rightValue))
+                return DataTypeCast.cast(type, left);
+            if (isEmptyString(leftValue))
+                return DataTypeCast.cast(type, right);
+            Expression inner = skipParentheses(left);
+            if (inner instanceof Addition && rightValue.isString()) {
+                Expression[] innerOperands = ((Addition) inner).getExpressions();
+                Variant middleValue = innerOperands[1].calculate();
+                if (middleValue.isString() && innerOperands[0].getType().getPureType() instanceof StringType) {
+                    Expression merged = new Addition(innerOperands[0],
+                            new StringNode(middleValue.stringValue() + rightValue.stringValue()));
+                    return DataTypeCast.cast(type, merged);
+                }
+            }
+            return null;
+        }
+
+        if (!(type instanceof ShortType || type instanceof IntegerType || type instanceof LongType))
+            return null;
+        if (expression instanceof Addition) {
+            if (isNumber(rightValue, 0))
+                return DataTypeCast.cast(type, left);
+            if (isNumber(leftValue, 0))
+                return DataTypeCast.cast(type, right);
+        }
+        else if (expression instanceof Subtraction) {
+            if (isNumber(rightValue, 0))
+                return DataTypeCast.cast(type, left);
+            if (isSameVariable(left, right))
+                return type.createExpression(Variant.createInt(0));
+        }
+        else if (expression instanceof Multiplication) {
+            if (isNumber(rightValue, 1))
+                return DataTypeCast.cast(type, left);
+            if (isNumber(leftValue, 1))
+                return DataTypeCast.cast(type, right);
+            if ((isNumber(rightValue, 0) && isPure(left)) || (isNumber(leftValue, 0) && isPure(right)))
+                return type.createExpression(Variant.createInt(0));
+        }
+        else if (expression instanceof Division) {
+            if (isNumber(rightValue, 1))
+                return DataTypeCast.cast(type, left);
+        }
+        else if (expression instanceof Modulus) {
+            if (isNumber(rightValue, 1) && isPure(left))
+                return type.createExpression(Variant.createInt(0));
+        }
+        return null;
+    }
+
+    private static boolean isNumber(Variant value, long number) {
+        return !value.isString() && value.hasLongValue() && value.longValue() == number;
+    }
+
+    private static boolean isEmptyString(Variant value) {
+        return value.isString() && value.stringValue().isEmpty();
+    }
+
+    /**
+     * @param expression an expression
+     * @return true if the expression does not call functions, so it can be evaluated twice or never
+     */
+    private static boolean isPure(Expression expression) {
+        for (Node node : expression.enumerate()) {
+            if (node instanceof FunctionCall)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param first an expression
+     * @param second another expression
+     * @return true if both expressions are references to the same variable, argument or field
+     */
+    private static boolean isSameVariable(Expression first, Expression second) {
+        first = skipParentheses(first);
+        second = skipParentheses(second);
+        if (!(first instanceof VariableReference) || !(second instanceof VariableReference))
+            return false;
+        Expression target = ((VariableReference) first).getExpression();
+        return (target instanceof Variable || target instanceof Argument || target instanceof Field)
+                && target == ((VariableReference) second).getExpression();
+    }
+
+    private static Expression skipParentheses(Expression expression) {
+        while (expression instanceof ParenthesizedExpression)
+            expression = ((ParenthesizedExpression) expression).getExpressions()[0];
+        return expression;
+    }
 }
@@ -59,6 +59,10 @@ public class For extends Statement implements  ExpressionOwner, StatementListOwn
         return start;
     }
 
+    StatementList getBody() {
+        return body;
+    }
+
     @Override
     public void compile(CompilationUnit unit) throws SyntaxError {
         LeftExpression assignableExpression = variable.toLeftExpression();
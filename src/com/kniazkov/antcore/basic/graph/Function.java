@@ -24,8 +24,10 @@ import com.kniazkov.antcore.basic.exceptions.ReturnTypeCanNotBeConstant;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The function
@@ -45,6 +47,7 @@ public class Function extends BaseFunction implements DataTypeOwner, StatementLi
         variableList = new ArrayList<>();
         localDataSize = new LocalDataSize();
         addresses = new HashMap<>();
+        registers = new ArrayList<>();
     }
 
     private static class LocalDataSize implements Size {
@@ -97,6 +100,10 @@ public class Function extends BaseFunction implements DataTypeOwner, StatementLi
         return this;
     }
 
+    StatementList getBody() {
+        return body;
+    }
+
     public int getFirstArgumentOffset() {
         return 8; // TODO : for methods +4
     }
@@ -140,18 +147,113 @@ public class Function extends BaseFunction implements DataTypeOwner, StatementLi
     }
 
     public void compile(CompilationUnit unit) throws SyntaxError {
-        RawInstruction firstInstruction = new Enter(localDataSize);
-        unit.addInstruction(firstInstruction);
         Module module = unit.getModule();
         DeferredOffset address = addresses.get(module);
         if (address != null) {
-            address.resolve(firstInstruction.getAddress());
+            unit.resolveAddress(address);
         }
+        inlinedFrames = new DeferredOffset();
+        inlinedFramesSize = 0;
+        frameInstructions = new HashSet<>();
+        RawInstruction enter = new Enter(localDataSize);
+        unit.addInstruction(enter);
+        frameInstructions.add(enter);
+        bodyAddress = unit.getCurrentAddress();
         body.compile(unit);
-        if (!(body.getLastStatement() instanceof Return)) {
-            unit.addInstruction(new Leave(localDataSize));
-            unit.addInstruction(new ReturnInstruction());
+        if (inlinedFramesSize > 0)
+            inlinedFrames.resolve(allocateLocalData(inlinedFramesSize));
+        if (!(body.getLastStatement() instanceof Return))
+            genReturn(unit);
+
+        // a function without arguments, return value and local data does not use the local pointer,
+        // so it does not need a frame
+        if (arguments == null && returnType == null && localDataSize.value == 0)
+            unit.removeInstructions(frameInstructions);
+        frameInstructions = null;
+    }
+
+    /**
+     * Generates the return from the function
+     * @param unit the compilation unit
+     */
+    void genReturn(CompilationUnit unit) {
+        RawInstruction leave = new Leave(localDataSize);
+        unit.addInstruction(leave);
+        frameInstructions.add(leave);
+        unit.addInstruction(new ReturnInstruction());
+    }
+
+    /**
+     * Generates a call of the function in its own tail position: new values of arguments, already placed
+     * to the stack in reverse order, replace the old ones, and the body starts again in the same frame
+     * @param unit the compilation unit
+     */
+    void genTailCall(CompilationUnit unit) throws SyntaxError {
+        if (arguments != null) {
+            for (Argument argument : arguments.getArguments())
+                argument.genStore(unit);
+        }
+        unit.addInstruction(new Jump(bodyAddress));
+    }
+
+    /**
+     * Checks whether calls of the function can be replaced by its body
+     * @param threshold maximum number of nodes of the body
+     * @return true if the function is small enough and does not call itself
+     */
+    boolean canBeInlined(int threshold) {
+        if (bodySize < 0) {
+            List<Node> nodes = body.enumerate();
+            bodySize = nodes.size();
+            for (Node node : nodes) {
+                if (node instanceof FunctionCall && ((FunctionCall) node).getCalledFunction() == this) {
+                    bodySize = Integer.MAX_VALUE;
+                    break;
+                }
+            }
         }
+        return bodySize <= threshold;
+    }
+
+    /**
+     * Generates the body of the function in place of a call. The arguments must be already placed
+     * to the stack in reverse order, the return value, if one exists, remains on the stack.
+     * The frame of the function is placed inside the frame of the caller, to the area that is shared
+     * by all inlined functions of the caller, since they are never executed simultaneously
+     * @param unit the compilation unit
+     * @param caller the function that contains the call
+     */
+    void genInline(CompilationUnit unit, Function caller) throws SyntaxError {
+        DeferredOffset displacement = new DeferredOffset();
+        DeferredOffset exit = new DeferredOffset();
+        unit.beginInlining(displacement, exit);
+        if (arguments != null) {
+            for (Argument argument : arguments.getArguments())
+                argument.genStore(unit);
+        }
+        body.compile(unit);
+        if (returnType != null && !(body.getLastStatement() instanceof Return))
+            unit.addInstruction(new PushZeros(returnType.getSize()));
+        unit.resolveAddress(exit);
+        unit.endInlining();
+
+        // the size of the frame is known only now, since temporary variables are created during compilation
+        int frameSize = localDataSize.value;
+        int argumentsSize = arguments != null ? arguments.getSize() : 0;
+        caller.inlinedFramesSize = Math.max(caller.inlinedFramesSize,
+                frameSize + getFirstArgumentOffset() + argumentsSize);
+        Offset area = caller.inlinedFrames;
+        displacement.resolve(() -> area.get() + frameSize);
+    }
+
+    /**
+     * Allocates a block of local data that is not bound to a variable
+     * @param size size of the block
+     * @return offset of the block relative to the local pointer
+     */
+    private int allocateLocalData(int size) {
+        localDataSize.value += size;
+        return -localDataSize.value;
     }
 
     /**
@@ -195,6 +297,18 @@ public class Function extends BaseFunction implements DataTypeOwner, StatementLi
         return variable;
     }
 
+    /**
+     * Get a virtual register, i.e. a temporary local variable for intermediate results of the register mode.
+     * Registers are created on demand and shared by all the statements of the function
+     * @param index index of the register
+     * @return offset of the register relative to the local pointer
+     */
+    int getRegister(int index) throws SyntaxError {
+        while (registers.size() <= index)
+            registers.add(createTemporaryVariable(LongType.getInstance()));
+        return registers.get(index).getOffset().get();
+    }
+
     /**
      * Go through all the statement lists and collect the variables,
      * then calculate offsets
@@ -244,4 +358,10 @@ public class Function extends BaseFunction implements DataTypeOwner, StatementLi
     private List<Variable> variableList;
     private LocalDataSize localDataSize;
     private Map<Module, DeferredOffset> addresses;
+    private List<Variable> registers;
+    private int bodySize = -1;
+    private DeferredOffset inlinedFrames;
+    private int inlinedFramesSize;
+    private Set<RawInstruction> frameInstructions;
+    private Offset bodyAddress;
 }
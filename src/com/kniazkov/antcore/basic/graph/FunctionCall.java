@@ -132,10 +132,11 @@ public class FunctionCall extends Expression implements ExpressionOwner {
     @Override
     public void genLoad(CompilationUnit unit) throws SyntaxError {
         int popSize = 0;
+        Function inlined = getInlinedFunction(unit);
 
         // reserve place for return value
         DataType returnType = function.getReturnType();
-        if (returnType != null)
+        if (returnType != null && inlined == null)
             unit.addInstruction(new PushZeros(returnType.getSize()));
 
         // place arguments to the stack
@@ -148,6 +149,12 @@ public class FunctionCall extends Expression implements ExpressionOwner {
             }
         }
 
+        // the body of the function replaces the call
+        if (inlined != null) {
+            inlined.genInline(unit, getStatement().getFunction());
+            return;
+        }
+
         // call
         function.genCall(unit);
 
@@ -159,6 +166,54 @@ public class FunctionCall extends Expression implements ExpressionOwner {
         // the return value, if one exists, will remain on the stack
     }
 
+    /**
+     * Generates the call in tail position of a function that calls itself as a jump, so the frame is reused
+     * and the recursion does not grow the stack
+     * @param unit the compilation unit
+     * @return false if the call is not a recursive call that can be replaced by a jump, nothing is generated then
+     */
+    boolean genTailCall(CompilationUnit unit) throws SyntaxError {
+        Statement statement = getStatement();
+        if (unit.isInlining() || statement == null || function != statement.getFunction())
+            return false;
+        // a pointer can refer to local data of the frame that is reused
+        List<DataType> argumentTypes = function.getArgumentTypes();
+        if (argumentTypes != null) {
+            for (DataType type : argumentTypes) {
+                if (type.getPureType() instanceof Pointer)
+                    return false;
+            }
+        }
+        ListIterator<Expression> iterator = arguments.listIterator(arguments.size());
+        while (iterator.hasPrevious())
+            iterator.previous().genLoad(unit);
+        ((Function) function).genTailCall(unit);
+        return true;
+    }
+
+    /**
+     * @return the called function
+     */
+    BaseFunction getCalledFunction() {
+        return function;
+    }
+
+    /**
+     * @param unit the compilation unit
+     * @return the called function if the call is replaced by its body, otherwise null
+     */
+    private Function getInlinedFunction(CompilationUnit unit) {
+        if (!(function instanceof Function) || unit.isInlining())
+            return null;
+        Statement statement = getStatement();
+        if (statement == null)
+            return null;
+        Function callee = (Function) function;
+        if (callee == statement.getFunction() || !callee.canBeInlined(unit.getOptions().getInlineThreshold()))
+            return null;
+        return callee;
+    }
+
     private String functionName;
     private BaseFunction function;
     private List<Expression> arguments;
@@ -68,6 +68,24 @@ public class If extends Statement implements ExpressionOwner, StatementListOwner
         return array;
     }
 
+    StatementList getBody() {
+        return body;
+    }
+
+    /**
+     * @return list of 'ELSE IF' blocks or null
+     */
+    List<ElseIf> getElseIfBlocks() {
+        return elseIfBlocks;
+    }
+
+    /**
+     * @return the 'ELSE' block or null
+     */
+    Else getElseBlock() {
+        return elseBlock;
+    }
+
     @Override
     public void compile(CompilationUnit unit) throws SyntaxError {
         condition.genLoad(unit);
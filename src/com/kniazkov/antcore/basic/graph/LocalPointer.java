@@ -38,6 +38,13 @@ public class LocalPointer extends Expression {
         return new Node[] { expression };
     }
 
+    /**
+     * @return the expression whose address is taken
+     */
+    Expression getExpression() {
+        return expression;
+    }
+
     @Override
     public DataType getType() throws SyntaxError {
         if (type == null)
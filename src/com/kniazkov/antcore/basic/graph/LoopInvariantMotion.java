@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.graph;
+
+import com.kniazkov.antcore.basic.common.SyntaxError;
+import com.kniazkov.antcore.lib.Variant;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loop-invariant code motion.
+ * An expression inside a loop that depends only on constants and on local variables not written in the loop
+ * is calculated once before the loop, the result is stored to a temporary variable.
+ * The 'FOR' loop calculates the end and the step once by itself, so only its body is processed;
+ * the 'DO' loop is processed with its condition.
+ * Expressions that can fail (division by a non-constant value) or have side effects (function calls)
+ * are never moved, because the loop body may be not executed at all
+ */
+final class LoopInvariantMotion {
+    private LoopInvariantMotion(Function function) {
+        this.function = function;
+        excluded = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Node node : function.getBody().enumerate()) {
+            if (node instanceof LocalPointer)
+                excluded.add(((LocalPointer) node).getExpression());
+        }
+    }
+
+    /**
+     * Applies the algorithm to a function
+     * @param function the function
+     */
+    static void apply(Function function) throws SyntaxError {
+        new LoopInvariantMotion(function).processList(function.getBody());
+    }
+
+    /**
+     * Finds loops in a statement list, outer loops are processed first
+     * @param list the list
+     */
+    private void processList(StatementList list) throws SyntaxError {
+        for (Statement statement : new ArrayList<>(list.getStatements())) {
+            if (statement instanceof For) {
+                For loop = (For) statement;
+                Set<Expression> written = getWrittenVariables(loop.getBody());
+                Expression counter = loop.getCounter();
+                written.add(counter instanceof VariableReference ? ((VariableReference) counter).getExpression()
+                        : counter);
+                Loop context = new Loop(loop, list, written);
+                context.moveFromList(loop.getBody());
+                processList(loop.getBody());
+            }
+            else if (statement instanceof DoLoop) {
+                DoLoop loop = (DoLoop) statement;
+                Loop context = new Loop(loop, list, getWrittenVariables(loop.getBody()));
+                context.moveFromOwner(loop);
+                context.moveFromList(loop.getBody());
+                processList(loop.getBody());
+            }
+            else if (statement instanceof If) {
+                If ifStatement = (If) statement;
+                processList(ifStatement.getBody());
+                List<ElseIf> elseIfBlocks = ifStatement.getElseIfBlocks();
+                if (elseIfBlocks != null) {
+                    for (ElseIf elseIfBlock : elseIfBlocks)
+                        processList(elseIfBlock.getBody());
+                }
+                Else elseBlock = ifStatement.getElseBlock();
+                if (elseBlock != null)
+                    processList(elseBlock.getBody());
+            }
+        }
+    }
+
+    /**
+     * Moves invariant expressions of one loop
+     */
+    private class Loop {
+        Loop(Statement loop, StatementList owner, Set<Expression> written) {
+            this.loop = loop;
+            this.owner = owner;
+            this.written = written;
+            temporaries = new HashMap<>();
+        }
+
+        void moveFromList(StatementList list) throws SyntaxError {
+            for (Statement statement : list.getStatements()) {
+                if (statement instanceof VariableDeclaration)
+                    moveFromOwner(((VariableDeclaration) statement).getVariable());
+                else if (statement instanceof ExpressionOwner)
+                    moveFromOwner((ExpressionOwner) statement);
+                if (statement instanceof If) {
+                    If ifStatement = (If) statement;
+                    moveFromList(ifStatement.getBody());
+                    List<ElseIf> elseIfBlocks = ifStatement.getElseIfBlocks();
+                    if (elseIfBlocks != null) {
+                        for (ElseIf elseIfBlock : elseIfBlocks) {
+                            moveFromOwner(elseIfBlock);
+                            moveFromList(elseIfBlock.getBody());
+                        }
+                    }
+                    Else elseBlock = ifStatement.getElseBlock();
+                    if (elseBlock != null)
+                        moveFromList(elseBlock.getBody());
+                }
+                else if (statement instanceof For)
+                    moveFromList(((For) statement).getBody());
+                else if (statement instanceof DoLoop)
+                    moveFromList(((DoLoop) statement).getBody());
+            }
+        }
+
+        void moveFromOwner(ExpressionOwner node) throws SyntaxError {
+            Expression[] list = node.getExpressions();
+            boolean changes = false;
+            for (int k = 0; k < list.length; k++) {
+                Expression expression = list[k];
+                if (expression == null)
+                    continue;
+                if (canBeMoved(expression)) {
+                    Variable variable = move(expression);
+                    Expression replacement = new VariableReference(variable.getName(), variable);
+                    replacement.setOwner(node);
+                    list[k] = replacement;
+                    changes = true;
+                }
+                else if (expression instanceof ExpressionOwner && !(expression instanceof VariableReference)) {
+                    moveFromOwner((ExpressionOwner) expression);
+                }
+            }
+            if (changes)
+                node.replaceExpressions(list);
+        }
+
+        /**
+         * Creates a temporary variable that is assigned before the loop,
+         * equal expressions share the same variable
+         * @param expression the expression
+         * @return the variable
+         */
+        private Variable move(Expression expression) throws SyntaxError {
+            StringBuilder buff = new StringBuilder();
+            expression.toUsageSourceCode(buff);
+            // names of temporary variables are all the same, so expressions with them are not compared
+            String key = buff.indexOf("$") < 0 ? buff.append(" AS ").append(expression.getType().getName()).toString()
+                    : null;
+            Variable variable = key != null ? temporaries.get(key) : null;
+            if (variable == null) {
+                variable = function.createTemporaryVariable(expression.getType());
+                owner.insertBefore(loop, new Assignment(loop.getFragment(),
+                        new VariableReference(variable.getName(), variable), expression));
+                if (key != null)
+                    temporaries.put(key, variable);
+            }
+            return variable;
+        }
+
+        /**
+         * @param expression an expression
+         * @return true if the expression makes calculations and can be calculated before the loop
+         */
+        private boolean canBeMoved(Expression expression) throws SyntaxError {
+            if (expression.isAtomic() || expression instanceof VariableReference)
+                return false;
+            if (expression instanceof ParenthesizedExpression)
+                return false;
+            return expression.calculate().isNull() && isInvariant(expression);
+        }
+
+        private boolean isInvariant(Expression expression) throws SyntaxError {
+            if (!isScalar(expression.getType()))
+                return false;
+            if (expression.isAtomic() || !expression.calculate().isNull())
+                return true;
+            if (expression instanceof VariableReference) {
+                Expression variable = ((VariableReference) expression).getExpression();
+                if (variable instanceof Constant)
+                    return true;
+                return (variable instanceof Variable || variable instanceof Argument)
+                        && !excluded.contains(variable) && !written.contains(variable);
+            }
+            if (expression instanceof Division || expression instanceof Modulus) {
+                Variant divisor = ((BinaryOperation) expression).getExpressions()[1].calculate();
+                if (!divisor.isNumber() || divisor.sign() == 0)
+                    return false;
+            }
+            if (expression instanceof BinaryOperation || expression instanceof UnaryOperation
+                    || expression instanceof Casting || expression instanceof ParenthesizedExpression) {
+                for (Expression child : ((ExpressionOwner) expression).getExpressions()) {
+                    if (!isInvariant(child))
+                        return false;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private final Statement loop;
+        private final StatementList owner;
+        private final Set<Expression> written;
+        private final Map<String, Variable> temporaries;
+    }
+
+    /**
+     * @param body a statement list
+     * @return variables that are assigned by statements of the list or by nested statements
+     */
+    private static Set<Expression> getWrittenVariables(StatementList body) {
+        Set<Expression> result = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Node node : body.enumerate()) {
+            Expression target = null;
+            if (node instanceof Assignment)
+                target = ((Assignment) node).getLeft();
+            else if (node instanceof For)
+                target = ((For) node).getCounter();
+            else if (node instanceof VariableDeclaration)
+                target = ((VariableDeclaration) node).getVariable();
+            if (target instanceof VariableReference)
+                target = ((VariableReference) target).getExpression();
+            if (target != null)
+                result.add(target);
+        }
+        return result;
+    }
+
+    private static boolean isScalar(DataType type) throws SyntaxError {
+        if (type == null)
+            return false;
+        type = type.getPureType();
+        if (type instanceof ConstantModifier)
+            type = ((ConstantModifier) type).getNonConstantType();
+        return type instanceof BooleanType || type instanceof ByteType || type instanceof ShortType
+                || type instanceof IntegerType || type instanceof LongType || type instanceof RealType;
+    }
+
+    private final Function function;
+    private final Set<Expression> excluded;
+}
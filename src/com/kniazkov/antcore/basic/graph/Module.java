@@ -19,6 +19,7 @@ package com.kniazkov.antcore.basic.graph;
 
 import com.kniazkov.antcore.basic.bytecodebuilder.End;
 import com.kniazkov.antcore.basic.bytecodebuilder.StaticDataBuilder;
+import com.kniazkov.antcore.basic.common.CompilerOptions;
 import com.kniazkov.antcore.basic.common.Fragment;
 import com.kniazkov.antcore.basic.common.SyntaxError;
 import com.kniazkov.antcore.basic.bytecodebuilder.CompilationUnit;
@@ -215,24 +216,50 @@ public class Module extends Node implements DataSetOwner, FunctionOwner {
         }
     }
 
+    /**
+     * @return all the functions that can be compiled into the module, i.e. the function MAIN
+     * and the functions that are called from it directly or indirectly
+     */
+    Set<Function> getReachableFunctions() {
+        Set<Function> result = new HashSet<>();
+        Deque<Function> queue = new ArrayDeque<>();
+        Function mainFunction = functionMap.get("MAIN");
+        if (mainFunction != null) {
+            result.add(mainFunction);
+            queue.add(mainFunction);
+        }
+        while (!queue.isEmpty()) {
+            for (Node node : queue.poll().enumerate()) {
+                if (node instanceof FunctionCall) {
+                    BaseFunction called = ((FunctionCall) node).getCalledFunction();
+                    if (called instanceof Function && result.add((Function) called))
+                        queue.add((Function) called);
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Compiling the module
+     * @param options options of the compiler
      * @return a bytecode
      */
-    public CompiledModule compile() throws SyntaxError {
+    public CompiledModule compile(CompilerOptions options) throws SyntaxError {
         Function mainFunction = functionMap.get("MAIN");
         if (mainFunction == null)
             throw new FunctionMainNotFound(fragment, name);
         if (mainFunction.getArgumentsCount() != 0 || mainFunction.getReturnType() != null)
             throw new IncorrectFunctionMain(fragment);
-        unit = new CompilationUnit(this, staticData);
+        unit = new CompilationUnit(this, staticData, options);
         Function function = mainFunction;
         do {
             function.compile(unit);
             function = unit.getNextNotCompiledFunction();
         } while (function != null);
         unit.addInstruction(new End());
-        return new CompiledModule(getNotNullExecutor(), name, unit.getBytecode());
+        unit.optimize();
+        return new CompiledModule(getNotNullExecutor(), name, unit.getBytecode(), options.isRegisterMode());
     }
 
     public int getDynamicDataOffset() {
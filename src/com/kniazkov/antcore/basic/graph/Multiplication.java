@@ -19,6 +19,8 @@ package com.kniazkov.antcore.basic.graph;
 import com.kniazkov.antcore.basic.bytecode.TypeSelector;
 import com.kniazkov.antcore.basic.bytecodebuilder.CompilationUnit;
 import com.kniazkov.antcore.basic.bytecodebuilder.Mul;
+import com.kniazkov.antcore.basic.bytecodebuilder.PushInteger;
+import com.kniazkov.antcore.basic.bytecodebuilder.Shl;
 import com.kniazkov.antcore.basic.common.SyntaxError;
 import com.kniazkov.antcore.basic.exceptions.OperatorNotApplicable;
 import com.kniazkov.antcore.lib.Variant;
@@ -78,6 +80,24 @@ public class Multiplication extends BinaryOperation {
         DataType leftType = getLeftPureNonConstantType();
         DataType rightType = getRightPureNonConstantType();
 
+        // multiplication by a power of two is replaced by a shift
+        if (leftType instanceof IntegerType && rightType instanceof IntegerType) {
+            int shift = getShift(right);
+            if (shift > 0) {
+                unit.addInstruction(new PushInteger(shift));
+                left.genLoad(unit);
+                unit.addInstruction(new Shl(TypeSelector.INTEGER, 4, 4, 4));
+                return;
+            }
+            shift = getShift(left);
+            if (shift > 0) {
+                unit.addInstruction(new PushInteger(shift));
+                right.genLoad(unit);
+                unit.addInstruction(new Shl(TypeSelector.INTEGER, 4, 4, 4));
+                return;
+            }
+        }
+
         right.genLoad(unit);
         left.genLoad(unit);
 
@@ -93,4 +113,18 @@ public class Multiplication extends BinaryOperation {
 
         assert(false);
     }
+
+    /**
+     * @param operand an operand
+     * @return the binary logarithm of the operand if it is a constant power of two greater than 1, otherwise 0
+     */
+    private static int getShift(Expression operand) {
+        Variant value = operand.calculate();
+        if (!value.hasIntValue() || value.isString())
+            return 0;
+        int number = value.intValue();
+        if (number < 2 || Integer.bitCount(number) != 1)
+            return 0;
+        return Integer.numberOfTrailingZeros(number);
+    }
 }
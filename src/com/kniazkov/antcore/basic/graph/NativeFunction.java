@@ -16,8 +16,7 @@
  */
 package com.kniazkov.antcore.basic.graph;
 
-import com.kniazkov.antcore.basic.bytecode.FunctionSelector;
-import com.kniazkov.antcore.basic.bytecodebuilder.Call;
+import com.kniazkov.antcore.basic.bytecodebuilder.CallNative;
 import com.kniazkov.antcore.basic.bytecodebuilder.CompilationUnit;
 import com.kniazkov.antcore.basic.common.Fragment;
 import com.kniazkov.antcore.basic.common.SyntaxError;
@@ -81,7 +80,8 @@ public class NativeFunction extends BaseFunction implements DataTypeOwner {
 
     @Override
     public void genCall(CompilationUnit unit) {
-        unit.addInstruction(new Call(FunctionSelector.NATIVE, unit.getStaticDataOffset(), unit.getStringOffset(name)));
+        unit.addInstruction(new CallNative(unit.getNativeFunctionIndex(name), unit.getStaticDataOffset(),
+                unit.getStringOffset(name)));
     }
 
     @Override
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.graph;
+
+import com.kniazkov.antcore.basic.common.SyntaxError;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs independent tasks of the compiler in the common fork-join pool.
+ * The result does not depend on the order of execution: results are returned in order of tasks,
+ * and if several tasks fail, the error of the first one is reported
+ */
+final class ParallelTasks {
+    private ParallelTasks() {
+    }
+
+    /**
+     * A task that can fail with a syntax error
+     * @param <T> type of the result
+     */
+    interface Task<T> {
+        T run() throws SyntaxError;
+    }
+
+    /**
+     * Runs tasks and waits until all of them are completed
+     * @param tasks the tasks
+     * @param <T> type of results
+     * @return results of the tasks in the same order
+     */
+    static <T> List<T> run(List<Task<T>> tasks) throws SyntaxError {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.size() < 2 || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            for (Task<T> task : tasks)
+                results.add(task.run());
+            return results;
+        }
+
+        List<Callable<T>> callables = new ArrayList<>(tasks.size());
+        for (Task<T> task : tasks)
+            callables.add(task::run);
+        List<Future<T>> futures = ForkJoinPool.commonPool().invokeAll(callables);
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(exception);
+            } catch (ExecutionException exception) {
+                Throwable cause = exception.getCause();
+                if (cause instanceof SyntaxError)
+                    throw (SyntaxError) cause;
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
+        return results;
+    }
+}
@@ -17,6 +17,7 @@
 package com.kniazkov.antcore.basic.graph;
 
 import com.kniazkov.antcore.basic.bytecode.Binding;
+import com.kniazkov.antcore.basic.common.CompilerOptions;
 import com.kniazkov.antcore.basic.common.SyntaxError;
 import com.kniazkov.antcore.basic.bytecode.CompiledModule;
 import com.kniazkov.antcore.basic.bytecode.CompiledProgram;
@@ -204,14 +205,68 @@ public class Program extends Node implements DataTypeOwner, ConstantListOwner {
     }
 
     public CompiledProgram compile() throws SyntaxError {
+        return compile(new CompilerOptions());
+    }
+
+    public CompiledProgram compile(CompilerOptions options) throws SyntaxError {
+        List<List<Module>> groups = groupModulesBySharedFunctions();
+        List<ParallelTasks.Task<List<CompiledModule>>> tasks = new ArrayList<>();
+        for (List<Module> group : groups) {
+            tasks.add(() -> {
+                List<CompiledModule> result = new ArrayList<>();
+                for (Module module : group)
+                    result.add(module.compile(options));
+                return result;
+            });
+        }
+        List<List<CompiledModule>> results = ParallelTasks.run(tasks);
+        Map<Module, CompiledModule> compiled = new IdentityHashMap<>();
+        for (int index = 0; index < groups.size(); index++) {
+            List<Module> group = groups.get(index);
+            for (int k = 0; k < group.size(); k++)
+                compiled.put(group.get(k), results.get(index).get(k));
+        }
+
         List<CompiledModule> binaries = new ArrayList<>();
         for (Module module : moduleList) {
-            binaries.add(module.compile());
+            binaries.add(compiled.get(module));
         }
 
         return new CompiledProgram(binaries, transmission != null ? transmission.getMapping() : null);
     }
 
+    /**
+     * Splits modules into groups that can be compiled in parallel. A function keeps the state of compilation,
+     * so modules that contain the same function (from a code block) are placed to the same group
+     * and compiled one by one in order of modules
+     * @return groups of modules
+     */
+    private List<List<Module>> groupModulesBySharedFunctions() {
+        int count = moduleList.size();
+        int[] groupIndex = new int[count];
+        Map<Function, Integer> firstModule = new HashMap<>();
+        for (int index = 0; index < count; index++) {
+            groupIndex[index] = index;
+            for (Function function : moduleList.get(index).getReachableFunctions()) {
+                Integer other = firstModule.putIfAbsent(function, index);
+                if (other != null) {
+                    int from = groupIndex[index];
+                    int to = groupIndex[other];
+                    if (from != to) {
+                        for (int k = 0; k <= index; k++) {
+                            if (groupIndex[k] == from)
+                                groupIndex[k] = to;
+                        }
+                    }
+                }
+            }
+        }
+        Map<Integer, List<Module>> groups = new TreeMap<>();
+        for (int index = 0; index < count; index++)
+            groups.computeIfAbsent(groupIndex[index], k -> new ArrayList<>()).add(moduleList.get(index));
+        return new ArrayList<>(groups.values());
+    }
+
     private ConstantList constants;
     private List<CodeBlock> allBlocks;
     private Map<String, List<CodeBlock>> blocksByExecutor;
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.graph;
+
+import com.kniazkov.antcore.basic.bytecode.DataSelector;
+import com.kniazkov.antcore.basic.bytecode.OpCode;
+import com.kniazkov.antcore.basic.bytecode.OperandSelector;
+import com.kniazkov.antcore.basic.bytecode.TypeSelector;
+import com.kniazkov.antcore.basic.bytecodebuilder.CompilationUnit;
+import com.kniazkov.antcore.basic.bytecodebuilder.Store;
+import com.kniazkov.antcore.basic.bytecodebuilder.ThreeAddressOperation;
+import com.kniazkov.antcore.basic.common.FixedOffset;
+import com.kniazkov.antcore.basic.common.SyntaxError;
+import com.kniazkov.antcore.basic.common.ZeroOffset;
+import com.kniazkov.antcore.lib.Variant;
+
+/**
+ * Compiles arithmetic statements on numeric local variables to three-address instructions (the register mode).
+ * Operands are local variables, arguments and constants, intermediate results are stored
+ * to virtual registers of the function, other expressions are calculated on the stack and then stored to a register
+ */
+final class RegisterLowering {
+    private RegisterLowering() {
+    }
+
+    /**
+     * An operand of a three-address instruction
+     */
+    private static class Operand {
+        boolean immediate;
+        int value;
+    }
+
+    /**
+     * Tries to compile an assignment in the register mode
+     * @param unit the compilation unit
+     * @param function the function containing the assignment
+     * @param left the left part of the assignment
+     * @param right the right part of the assignment
+     * @return true if the assignment was compiled, false if it must be compiled on the stack
+     */
+    static boolean genAssignment(CompilationUnit unit, Function function, Expression left, Expression right)
+            throws SyntaxError {
+        Integer destination = getLocalOffset(left);
+        right = skipParentheses(right);
+        if (destination == null || !(right instanceof BinaryOperation))
+            return false;
+        BinaryOperation operation = (BinaryOperation) right;
+        byte selector = getTypeSelector(left.getType());
+        if (selector < 0 || getOperation(operation, selector) < 0 || hasSideEffects(operation))
+            return false;
+        genOperation(unit, function, operation, selector, destination, 0);
+        return true;
+    }
+
+    /**
+     * Generates a three-address instruction for a binary operation, operands are calculated first
+     * @param unit the compilation unit
+     * @param function the function
+     * @param operation the operation
+     * @param selector type selector of the operation
+     * @param destination offset of the result relative to the local pointer
+     * @param register index of the first register that can be used for intermediate results
+     */
+    private static void genOperation(CompilationUnit unit, Function function, BinaryOperation operation,
+                                     byte selector, int destination, int register) throws SyntaxError {
+        // the left operand may use all the registers starting from the first one, but keeps its result in the first one
+        Operand left = genOperand(unit, function, operation.left, selector, register);
+        Operand right = genOperand(unit, function, operation.right, selector, register + 1);
+        byte operands;
+        if (left.immediate && right.immediate) {
+            genStoreToRegister(unit, function, operation.left, selector, register);
+            left.immediate = false;
+            left.value = function.getRegister(register);
+        }
+        if (left.immediate)
+            operands = OperandSelector.IMMEDIATE_LOCAL;
+        else if (right.immediate)
+            operands = OperandSelector.LOCAL_IMMEDIATE;
+        else
+            operands = OperandSelector.LOCAL_LOCAL;
+        unit.addInstruction(new ThreeAddressOperation(selector, getOperation(operation, selector), operands,
+                destination, left.value, right.value));
+    }
+
+    /**
+     * Generates code that prepares an operand
+     * @param unit the compilation unit
+     * @param function the function
+     * @param expression the expression
+     * @param selector type selector of the operation
+     * @param register index of the register for the result
+     * @return the operand
+     */
+    private static Operand genOperand(CompilationUnit unit, Function function, Expression expression,
+                                      byte selector, int register) throws SyntaxError {
+        Operand operand = new Operand();
+        expression = skipParentheses(expression);
+        if (getTypeSelector(expression.getType()) == selector) {
+            Integer offset = getLocalOffset(expression);
+            if (offset != null) {
+                operand.value = offset;
+                return operand;
+            }
+            Variant constant = expression.calculate();
+            if (isImmediate(constant, selector)) {
+                operand.immediate = true;
+                operand.value = constant.intValue();
+                return operand;
+            }
+            if (expression instanceof BinaryOperation) {
+                BinaryOperation operation = (BinaryOperation) expression;
+                if (getOperation(operation, selector) >= 0) {
+                    operand.value = function.getRegister(register);
+                    genOperation(unit, function, operation, selector, operand.value, register);
+                    return operand;
+                }
+            }
+        }
+        genStoreToRegister(unit, function, expression, selector, register);
+        operand.value = function.getRegister(register);
+        return operand;
+    }
+
+    /**
+     * Calculates an expression on the stack and stores the result to a register
+     * @param unit the compilation unit
+     * @param function the function
+     * @param expression the expression
+     * @param selector type selector of the operation
+     * @param register index of the register
+     */
+    private static void genStoreToRegister(CompilationUnit unit, Function function, Expression expression,
+                                           byte selector, int register) throws SyntaxError {
+        expression.genLoad(unit);
+        unit.addInstruction(new Store(DataSelector.LOCAL, getSize(selector), ZeroOffset.getInstance(),
+                new FixedOffset(function.getRegister(register))));
+    }
+
+    private static Expression skipParentheses(Expression expression) {
+        while (expression instanceof ParenthesizedExpression)
+            expression = ((ParenthesizedExpression) expression).getExpressions()[0];
+        return expression;
+    }
+
+    /**
+     * @param expression an expression
+     * @return offset of a local variable or an argument relative to the local pointer,
+     *   or null if the expression is not a local variable or an argument
+     */
+    private static Integer getLocalOffset(Expression expression) {
+        while (expression instanceof VariableReference)
+            expression = ((VariableReference) expression).getExpression();
+        if (expression instanceof Variable)
+            return ((Variable) expression).getOffset().get();
+        if (expression instanceof Argument)
+            return ((Argument) expression).getLocalOffset();
+        return null;
+    }
+
+    /**
+     * @param type a data type
+     * @return type selector of the type or -1 if the type is not supported by three-address instructions
+     */
+    private static byte getTypeSelector(DataType type) {
+        type = type.getPureType();
+        if (type instanceof ConstantModifier)
+            type = ((ConstantModifier) type).getNonConstantType();
+        if (type instanceof ShortType)
+            return TypeSelector.SHORT;
+        if (type instanceof IntegerType)
+            return TypeSelector.INTEGER;
+        if (type instanceof LongType)
+            return TypeSelector.LONG;
+        return -1;
+    }
+
+    private static int getSize(byte selector) {
+        switch (selector) {
+            case TypeSelector.SHORT:
+                return 2;
+            case TypeSelector.INTEGER:
+                return 4;
+            default:
+                return 8;
+        }
+    }
+
+    /**
+     * @param operation a binary operation
+     * @param selector type selector of the result
+     * @return opcode of the operation or -1 if the operation can not be compiled to a three-address instruction,
+     *   the set of operations and types is the same as the stack code supports
+     */
+    private static byte getOperation(BinaryOperation operation, byte selector) throws SyntaxError {
+        if (getTypeSelector(operation.getType()) != selector
+                || getTypeSelector(operation.getLeftPureNonConstantType()) != selector
+                || getTypeSelector(operation.getRightPureNonConstantType()) != selector)
+            return -1;
+        if (operation instanceof Addition)
+            return OpCode.ADD;
+        if (selector == TypeSelector.LONG)
+            return -1;
+        if (operation instanceof Subtraction)
+            return OpCode.SUB;
+        if (operation instanceof Multiplication)
+            return OpCode.MUL;
+        if (operation instanceof Division)
+            return OpCode.DIV;
+        if (operation instanceof Modulus)
+            return OpCode.MOD;
+        return -1;
+    }
+
+    /**
+     * @param value a calculated value of an expression
+     * @param selector type selector of the operation
+     * @return true if the value is a constant that fits the immediate field of the instruction
+     */
+    private static boolean isImmediate(Variant value, byte selector) {
+        switch (selector) {
+            case TypeSelector.SHORT:
+                return value.isShort();
+            case TypeSelector.INTEGER:
+                return value.isShort() || value.isInt();
+            case TypeSelector.LONG:
+                if (value.isShort() || value.isInt())
+                    return true;
+                return value.isLong() && value.longValue() == value.intValue();
+        }
+        return false;
+    }
+
+    /**
+     * The register mode calculates the left operand before the right one and reads variables
+     * when the instruction is executed, that is, after all the nested expressions are calculated.
+     * This changes order of evaluation, so expressions containing function calls are compiled on the stack
+     * @param expression an expression
+     * @return true if the expression contains a function call
+     */
+    private static boolean hasSideEffects(Expression expression) {
+        if (expression instanceof FunctionCall)
+            return true;
+        if (expression instanceof ExpressionOwner && !(expression instanceof VariableReference)) {
+            for (Expression child : ((ExpressionOwner) expression).getExpressions()) {
+                if (hasSideEffects(child))
+                    return true;
+            }
+        }
+        return false;
+    }
+}
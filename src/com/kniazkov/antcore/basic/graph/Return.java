@@ -18,11 +18,12 @@ package com.kniazkov.antcore.basic.graph;
 
 import com.kniazkov.antcore.basic.bytecode.DataSelector;
 import com.kniazkov.antcore.basic.bytecodebuilder.CompilationUnit;
-import com.kniazkov.antcore.basic.bytecodebuilder.Leave;
-import com.kniazkov.antcore.basic.bytecodebuilder.ReturnInstruction;
+import com.kniazkov.antcore.basic.bytecodebuilder.Jump;
+import com.kniazkov.antcore.basic.bytecodebuilder.PushZeros;
 import com.kniazkov.antcore.basic.bytecodebuilder.Store;
 import com.kniazkov.antcore.basic.common.FixedOffset;
 import com.kniazkov.antcore.basic.common.Fragment;
+import com.kniazkov.antcore.basic.common.Offset;
 import com.kniazkov.antcore.basic.common.SyntaxError;
 import com.kniazkov.antcore.basic.common.ZeroOffset;
 
@@ -40,14 +41,28 @@ public class Return extends Statement implements ExpressionOwner {
     @Override
     public void compile(CompilationUnit unit) throws SyntaxError {
         Function function = getFunction();
+        Offset exit = unit.getInlineExit();
+        if (exit != null) {
+            // the function is inlined, the return value remains on the stack
+            // and occupies the same place as if it would be stored to the reserved one
+            if (value != null) {
+                int padding = function.getReturnType().getSize() - value.getType().getSize();
+                if (padding > 0)
+                    unit.addInstruction(new PushZeros(padding));
+                value.genLoad(unit);
+            }
+            unit.addInstruction(new Jump(exit));
+            return;
+        }
+        if (value instanceof FunctionCall && ((FunctionCall) value).genTailCall(unit))
+            return;
         if (value != null) {
             value.genLoad(unit);
             unit.addInstruction(new Store(DataSelector.LOCAL,
                     value.getType().getSize(), ZeroOffset.getInstance(),
                     new FixedOffset(function.getReturnValueOffset())));
         }
-        unit.addInstruction(new Leave(function.getLocalDataSize()));
-        unit.addInstruction(new ReturnInstruction());
+        function.genReturn(unit);
     }
 
     @Override
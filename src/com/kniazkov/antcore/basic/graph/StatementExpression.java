@@ -45,6 +45,9 @@ public class StatementExpression extends Statement implements ExpressionOwner {
     @Override
     public void compile(CompilationUnit unit) throws SyntaxError {
         Variant value = expression.calculate();
+        if (expression instanceof FunctionCall && expression.getType() == null && isInTailPosition()
+                && ((FunctionCall) expression).genTailCall(unit))
+            return;
         if (value.isNull()) {
             expression.genLoad(unit);
             DataType returnType = expression.getType();
@@ -53,6 +56,27 @@ public class StatementExpression extends Statement implements ExpressionOwner {
         }
     }
 
+    /**
+     * @return true if the function returns right after this statement, i.e. the statement is the last one
+     * in the body or in a branch of a conditional statement that is in tail position itself
+     */
+    private boolean isInTailPosition() {
+        Statement statement = this;
+        while (true) {
+            StatementList list = (StatementList) statement.getOwner();
+            if (list.getLastStatement() != statement)
+                return false;
+            Node owner = list.getOwner();
+            if (owner instanceof Function)
+                return true;
+            if (owner instanceof ElseIf || owner instanceof Else)
+                owner = owner.getOwner();
+            if (!(owner instanceof If))
+                return false;
+            statement = (If) owner;
+        }
+    }
+
     @Override
     public void toSourceCode(StringBuilder buff, String i, String i0) {
         buff.append(i);
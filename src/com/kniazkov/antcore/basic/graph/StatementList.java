@@ -103,6 +103,41 @@ public class StatementList extends Node {
         return owner.getFunction();
     }
 
+    List<Statement> getStatements() {
+        return statements;
+    }
+
+    /**
+     * Removes statements from the list, variables declared by removed statements are removed too
+     * @param removed statements to remove
+     */
+    void removeStatements(Set<Statement> removed) {
+        List<Statement> list = new ArrayList<>();
+        for (Statement statement : statements) {
+            if (removed.contains(statement)) {
+                if (statement instanceof VariableDeclaration)
+                    variableList.remove(((VariableDeclaration) statement).getVariable());
+            }
+            else
+                list.add(statement);
+        }
+        statements = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Inserts a statement into the list
+     * @param position the statement before that the new one is inserted
+     * @param statement the new statement
+     */
+    void insertBefore(Statement position, Statement statement) {
+        List<Statement> list = new ArrayList<>(statements);
+        int index = list.indexOf(position);
+        assert (index >= 0);
+        list.add(index, statement);
+        statement.setOwner(this);
+        statements = Collections.unmodifiableList(list);
+    }
+
     public Statement getLastStatement() {
         return statements.isEmpty() ? null : statements.get(statements.size() - 1);
     }
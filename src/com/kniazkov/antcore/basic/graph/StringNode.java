@@ -24,8 +24,8 @@ import com.kniazkov.antcore.basic.common.Offset;
 import com.kniazkov.antcore.basic.common.SyntaxError;
 import com.kniazkov.antcore.lib.Variant;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The node represents a string constant
@@ -33,7 +33,7 @@ import java.util.Map;
 public class StringNode extends Expression {
     public StringNode(String value) {
         this.value = value;
-        address = new HashMap<>();
+        address = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -99,7 +99,7 @@ public class StringNode extends Expression {
      * @param module the module
      */
     void calculateAddress(Module module) {
-        if(!address.containsKey(module));
+        if (!address.containsKey(module))
             address.put(module, module.getStaticData().getStringOffset(value));
     }
 
@@ -24,7 +24,7 @@ import com.kniazkov.antcore.lib.Variant;
 /**
  * The node represents pointer to a temporary object
  */
-public class TemporaryPointer extends Expression {
+public class TemporaryPointer extends Expression implements ExpressionOwner {
     public TemporaryPointer(Expression expression, Variable tmpVar) {
         this.expression = expression;
         this.tmpVar = tmpVar;
@@ -66,6 +66,18 @@ public class TemporaryPointer extends Expression {
         unit.addInstruction(new PushLocalPointer(tmpVar.getOffset()));
     }
 
+    @Override
+    public Expression[] getExpressions() {
+        return new Expression[] {expression};
+    }
+
+    @Override
+    public void replaceExpressions(Expression[] list) {
+        assert (list.length == 1);
+        expression = list[0];
+        expression.setOwner(this);
+    }
+
     private Expression expression;
     private Variable tmpVar;
     private DataType type;
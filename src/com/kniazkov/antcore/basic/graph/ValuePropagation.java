@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.graph;
+
+import com.kniazkov.antcore.basic.common.SyntaxError;
+import com.kniazkov.antcore.lib.Variant;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Constant and copy propagation inside a function.
+ * The statements are visited in order of execution, the pass keeps the values of local variables and arguments
+ * known at each point: a constant or another variable whose value was copied. Uses of such variables
+ * are replaced by the constants or by the source variables, so the expression simplification can fold them.
+ * Branches are merged by keeping values that are equal in all branches; variables assigned inside a loop
+ * are unknown in the whole loop.
+ * Only variables of numeric and boolean types whose addresses are never taken are processed.
+ * After that, a declared variable that is never read is removed together with assignments to it,
+ * if all the assigned expressions have no function calls, so it takes no place in the stack frame
+ */
+final class ValuePropagation {
+    /**
+     * The known value of a variable
+     */
+    private static final class Value {
+        Value(Variant constant) {
+            this.constant = constant;
+            this.source = null;
+        }
+
+        Value(Expression source) {
+            this.constant = null;
+            this.source = source;
+        }
+
+        boolean isSameAs(Value other) {
+            if (constant != null) {
+                if (other.constant == null)
+                    return false;
+                Variant result = constant.equals(other.constant);
+                return result.hasBooleanValue() && result.booleanValue();
+            }
+            return source == other.source;
+        }
+
+        final Variant constant;
+        final Expression source;
+    }
+
+    private ValuePropagation(Function function) {
+        this.function = function;
+        excluded = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Node node : function.getBody().enumerate()) {
+            if (node instanceof LocalPointer)
+                excluded.add(((LocalPointer) node).getExpression());
+        }
+    }
+
+    /**
+     * Applies the algorithm to a function
+     * @param function the function
+     */
+    static void apply(Function function) throws SyntaxError {
+        ValuePropagation obj = new ValuePropagation(function);
+        obj.processList(function.getBody(), new HashMap<>());
+        obj.removeUnusedVariables();
+    }
+
+    private void processList(StatementList list, Map<Expression, Value> state) throws SyntaxError {
+        for (Statement statement : list.getStatements())
+            processStatement(statement, state);
+    }
+
+    private void processStatement(Statement statement, Map<Expression, Value> state) throws SyntaxError {
+        if (statement instanceof Assignment) {
+            Assignment assignment = (Assignment) statement;
+            substitute(assignment, state);
+            Expression target = getVariable(assignment.getLeft());
+            if (target != null)
+                assign(target, assignment.getRight(), state);
+        }
+        else if (statement instanceof VariableDeclaration) {
+            Variable variable = ((VariableDeclaration) statement).getVariable();
+            substitute(variable, state);
+            if (isTracked(variable))
+                assign(variable, variable.getInitValue(), state);
+        }
+        else if (statement instanceof If) {
+            If ifStatement = (If) statement;
+            substitute(ifStatement, state);
+            Map<Expression, Value> result = new HashMap<>(state);
+            processList(ifStatement.getBody(), result);
+            List<ElseIf> elseIfBlocks = ifStatement.getElseIfBlocks();
+            if (elseIfBlocks != null) {
+                for (ElseIf elseIfBlock : elseIfBlocks) {
+                    substitute(elseIfBlock, state);
+                    Map<Expression, Value> branch = new HashMap<>(state);
+                    processList(elseIfBlock.getBody(), branch);
+                    merge(result, branch);
+                }
+            }
+            Else elseBlock = ifStatement.getElseBlock();
+            if (elseBlock != null) {
+                Map<Expression, Value> branch = new HashMap<>(state);
+                processList(elseBlock.getBody(), branch);
+                merge(result, branch);
+            }
+            else
+                merge(result, state);
+            state.clear();
+            state.putAll(result);
+        }
+        else if (statement instanceof DoLoop) {
+            DoLoop loop = (DoLoop) statement;
+            for (Expression variable : getAssignedVariables(loop.getBody()))
+                kill(variable, state);
+            substitute(loop, state);
+            processList(loop.getBody(), new HashMap<>(state));
+        }
+        else if (statement instanceof For) {
+            For loop = (For) statement;
+            // the start, the end and the step are calculated once before the loop
+            substitute(loop, state);
+            Expression counter = getVariable(loop.getCounter());
+            if (counter != null)
+                kill(counter, state);
+            for (Expression variable : getAssignedVariables(loop.getBody()))
+                kill(variable, state);
+            processList(loop.getBody(), new HashMap<>(state));
+        }
+        else if (statement instanceof ExpressionOwner) {
+            substitute((ExpressionOwner) statement, state);
+        }
+    }
+
+    /**
+     * Replaces uses of variables with known values in expressions of a node
+     * @param owner the node
+     * @param state known values
+     */
+    private void substitute(ExpressionOwner owner, Map<Expression, Value> state) throws SyntaxError {
+        Expression[] list = owner.getExpressions();
+        boolean changes = false;
+        for (int k = 0; k < list.length; k++) {
+            Expression expression = list[k];
+            if (expression == null)
+                continue;
+            Expression variable = getVariable(expression);
+            Value value = variable != null ? state.get(variable) : null;
+            if (value != null) {
+                Expression replacement = createExpression(variable, value);
+                if (replacement != null) {
+                    replacement.setOwner(owner);
+                    list[k] = replacement;
+                    changes = true;
+                }
+            }
+            else if (expression instanceof ExpressionOwner) {
+                substitute((ExpressionOwner) expression, state);
+            }
+        }
+        if (changes)
+            owner.replaceExpressions(list);
+    }
+
+    private void assign(Expression target, Expression value, Map<Expression, Value> state) throws SyntaxError {
+        kill(target, state);
+        if (value == null)
+            return;
+        Variant constant = value.calculate();
+        if (!constant.isNull()) {
+            if (target.getType().getPureType().createExpression(constant) != null)
+                state.put(target, new Value(constant));
+            return;
+        }
+        Expression source = getVariable(value);
+        if (source != null && source != target)
+            state.put(target, new Value(source));
+    }
+
+    private static void kill(Expression variable, Map<Expression, Value> state) {
+        state.remove(variable);
+        Iterator<Map.Entry<Expression, Value>> iterator = state.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue().source == variable)
+                iterator.remove();
+        }
+    }
+
+    /**
+     * Keeps only values that are the same in both states
+     * @param result the first state, receives the result
+     * @param other the second state
+     */
+    private static void merge(Map<Expression, Value> result, Map<Expression, Value> other) {
+        Iterator<Map.Entry<Expression, Value>> iterator = result.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Expression, Value> entry = iterator.next();
+            Value value = other.get(entry.getKey());
+            if (value == null || !value.isSameAs(entry.getValue()))
+                iterator.remove();
+        }
+    }
+
+    private Expression createExpression(Expression variable, Value value) throws SyntaxError {
+        if (value.constant != null)
+            return variable.getType().getPureType().createExpression(value.constant);
+        Expression source = value.source;
+        String name = source instanceof Variable ? ((Variable) source).getName() : ((Argument) source).getName();
+        return new VariableReference(name, source);
+    }
+
+    /**
+     * @param expression an expression
+     * @return the local variable or the argument the expression refers to if it can be processed, or null
+     */
+    private Expression getVariable(Expression expression) throws SyntaxError {
+        if (!(expression instanceof VariableReference))
+            return null;
+        Expression variable = ((VariableReference) expression).getExpression();
+        return isTracked(variable) ? variable : null;
+    }
+
+    private boolean isTracked(Expression variable) throws SyntaxError {
+        if (!(variable instanceof Variable) && !(variable instanceof Argument))
+            return false;
+        if (excluded.contains(variable))
+            return false;
+        DataType type = variable.getType().getPureType();
+        return type instanceof BooleanType || type instanceof ByteType || type instanceof ShortType
+                || type instanceof IntegerType || type instanceof LongType || type instanceof RealType;
+    }
+
+    /**
+     * @param body a statement list
+     * @return variables that are assigned by statements of the list or by nested statements
+     */
+    private Set<Expression> getAssignedVariables(StatementList body) throws SyntaxError {
+        Set<Expression> result = new HashSet<>();
+        for (Node node : body.enumerate()) {
+            Expression variable = null;
+            if (node instanceof Assignment)
+                variable = getVariable(((Assignment) node).getLeft());
+            else if (node instanceof For)
+                variable = getVariable(((For) node).getCounter());
+            else if (node instanceof VariableDeclaration)
+                variable = ((VariableDeclaration) node).getVariable();
+            if (variable != null)
+                result.add(variable);
+        }
+        return result;
+    }
+
+    /**
+     * Removes declared variables that are never read and assignments to them
+     */
+    private void removeUnusedVariables() throws SyntaxError {
+        Set<Expression> used = new HashSet<>();
+        Map<Expression, List<Statement>> writes = new HashMap<>();
+        Map<Statement, StatementList> owners = new HashMap<>();
+        for (Node node : function.getBody().enumerate()) {
+            if (node instanceof StatementList) {
+                for (Statement statement : ((StatementList) node).getStatements())
+                    owners.put(statement, (StatementList) node);
+            }
+            else if (node instanceof VariableReference) {
+                Node owner = node.getOwner();
+                boolean isWrite = owner instanceof Assignment && ((Assignment) owner).getLeft() == node;
+                if (!isWrite)
+                    used.add(((VariableReference) node).getExpression());
+            }
+        }
+        for (Node node : function.getBody().enumerate()) {
+            if (node instanceof Assignment) {
+                Assignment assignment = (Assignment) node;
+                Expression variable = getVariable(assignment.getLeft());
+                if (variable != null)
+                    writes.computeIfAbsent(variable, v -> new ArrayList<>()).add(assignment);
+            }
+            else if (node instanceof VariableDeclaration) {
+                Variable variable = ((VariableDeclaration) node).getVariable();
+                writes.computeIfAbsent(variable, v -> new ArrayList<>()).add((Statement) node);
+            }
+        }
+
+        Map<StatementList, Set<Statement>> removed = new HashMap<>();
+        for (Map.Entry<Expression, List<Statement>> entry : writes.entrySet()) {
+            Expression variable = entry.getKey();
+            if (!(variable instanceof Variable) || used.contains(variable) || !isTracked(variable))
+                continue;
+            boolean declared = false;
+            boolean canRemove = true;
+            for (Statement statement : entry.getValue()) {
+                Expression value;
+                if (statement instanceof VariableDeclaration) {
+                    declared = true;
+                    value = ((Variable) variable).getInitValue();
+                }
+                else
+                    value = ((Assignment) statement).getRight();
+                if (value != null && hasCalls(value))
+                    canRemove = false;
+            }
+            // variables created by the first assignment have the place in the stack frame already
+            if (!declared || !canRemove)
+                continue;
+            for (Statement statement : entry.getValue()) {
+                StatementList list = owners.get(statement);
+                removed.computeIfAbsent(list, l -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                        .add(statement);
+            }
+        }
+        for (Map.Entry<StatementList, Set<Statement>> entry : removed.entrySet())
+            entry.getKey().removeStatements(entry.getValue());
+    }
+
+    private static boolean hasCalls(Expression expression) {
+        if (expression instanceof FunctionCall)
+            return true;
+        if (expression instanceof ExpressionOwner && !(expression instanceof VariableReference)) {
+            for (Expression child : ((ExpressionOwner) expression).getExpressions()) {
+                if (child != null && hasCalls(child))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private final Function function;
+    private final Set<Expression> excluded;
+}
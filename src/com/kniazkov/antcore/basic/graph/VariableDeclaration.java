@@ -42,15 +42,6 @@ public class VariableDeclaration extends Statement {
         return new Node[] { variable };
     }
 
-    void setOwner(StatementList owner) {
-        this.owner = owner;
-    }
-
-    @Override
-    public Node getOwner() {
-        return owner;
-    }
-
     public Variable getVariable() {
         return variable;
     }
@@ -71,6 +62,5 @@ public class VariableDeclaration extends Statement {
         buff.append('\n');
     }
 
-    private StatementList owner;
     private Variable variable;
 }
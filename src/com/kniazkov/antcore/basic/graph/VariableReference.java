@@ -44,6 +44,13 @@ public class VariableReference extends Expression implements ExpressionOwner {
         return name;
     }
 
+    /**
+     * @return the expression the name is bound to
+     */
+    Expression getExpression() {
+        return expression;
+    }
+
     @Override
     public DataType getType() throws SyntaxError {
         return expression.getType();
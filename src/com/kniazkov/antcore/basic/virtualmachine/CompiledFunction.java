@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.virtualmachine;
+
+/**
+ * A function of a module translated to a class of the Java virtual machine by the JIT compiler
+ */
+interface CompiledFunction {
+    /**
+     * Executes the function until it returns, the compiled code uses the memory and the registers
+     * of the virtual machine, so it can be started in the middle of the function and can call interpreted code
+     * @param vm the virtual machine
+     * @param start index of the instruction to start from: the entry of the function or a loop header
+     */
+    void run(VirtualMachine vm, int start);
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.virtualmachine;
+
+import com.kniazkov.antcore.basic.bytecode.BytecodeFormat;
+import com.kniazkov.antcore.basic.bytecode.FunctionSelector;
+import com.kniazkov.antcore.basic.bytecode.Instruction;
+import com.kniazkov.antcore.basic.bytecode.OpCode;
+import com.kniazkov.antcore.lib.ByteBuffer;
+import com.kniazkov.antcore.lib.ByteList;
+
+import java.util.Arrays;
+
+/**
+ * The code segment of a module decoded into parallel arrays, one item per instruction.
+ * The code never changes after loading, so the virtual machine executes it from these arrays
+ * and uses its memory only for data and stack.
+ * Addresses of jumps and calls are converted to indexes of instructions.
+ */
+public final class DecodedCode {
+    private DecodedCode(ByteList bytecode, int count) {
+        this.bytecode = bytecode;
+        this.count = count;
+        opcode = new int[count];
+        p0 = new int[count];
+        p1 = new int[count];
+        p2 = new int[count];
+        x0 = new int[count];
+        x1 = new int[count];
+        x2 = new int[count];
+        address = new int[count];
+    }
+
+    /**
+     * Decode the bytecode of a module
+     * @param bytecode the bytecode (code and static data)
+     * @return decoded code
+     */
+    public static DecodedCode decode(ByteList bytecode) {
+        int size = bytecode.size();
+        BytecodeFormat format = BytecodeFormat.detect(bytecode);
+        Instruction inst = new Instruction();
+        int count = 0;
+        int address = format.getCodeStart();
+        while (address < size) {
+            address += inst.read(bytecode, address, format);
+            count++;
+            if (inst.opcode == OpCode.END)
+                break;
+        }
+
+        DecodedCode code = new DecodedCode(bytecode, count);
+        address = format.getCodeStart();
+        for (int index = 0; index < count; index++) {
+            code.address[index] = address;
+            address += inst.read(bytecode, address, format);
+            code.opcode[index] = inst.opcode;
+            code.p0[index] = inst.p0;
+            code.p1[index] = inst.p1;
+            code.p2[index] = inst.p2;
+            code.x0[index] = inst.x0;
+            code.x1[index] = inst.x1;
+            code.x2[index] = inst.x2;
+        }
+        code.codeSize = address;
+
+        int nativeCount = 0;
+        for (int index = 0; index < count; index++) {
+            if (hasCodeAddress(code.opcode[index], code.p0[index]))
+                code.x0[index] = code.getIndex(code.x0[index]);
+            else if (code.opcode[index] == OpCode.CALL && code.p0[index] == FunctionSelector.NATIVE)
+                nativeCount = Math.max(nativeCount, code.x0[index] + 1);
+        }
+
+        // names of native functions by their indexes
+        code.nativeFunctionNames = new String[nativeCount];
+        for (int index = 0; index < count; index++) {
+            if (code.opcode[index] == OpCode.CALL && code.p0[index] == FunctionSelector.NATIVE && code.x0[index] >= 0)
+                code.nativeFunctionNames[code.x0[index]] = StringData.getString(bytecode, code.x1[index]);
+        }
+        return code;
+    }
+
+    /**
+     * Copies the static data that follows the code to the memory of a virtual machine, to the same addresses
+     * @param memory the memory
+     */
+    public void loadStaticData(ByteBuffer memory) {
+        memory.setByteList(codeSize, bytecode, codeSize, bytecode.size() - codeSize);
+    }
+
+    /**
+     * @return the JIT compiler that is shared by all virtual machines executing this code in the tiered mode
+     */
+    synchronized JitCompiler getJitCompiler() {
+        if (jit == null) {
+            jit = new JitCompiler(this);
+            jit.setThreshold(compileThreshold);
+        }
+        return jit;
+    }
+
+    /**
+     * Sets the number of invocations and loop iterations after that a function is compiled in the tiered mode
+     * @param threshold the threshold
+     */
+    public synchronized void setCompileThreshold(int threshold) {
+        compileThreshold = threshold;
+        if (jit != null)
+            jit.setThreshold(threshold);
+    }
+
+    /**
+     * @param opcode the opcode
+     * @param p0 the first parameter
+     * @return true if the 'x0' field of the instruction contains an address in the code segment
+     */
+    private static boolean hasCodeAddress(int opcode, int p0) {
+        switch (opcode) {
+            case OpCode.IF:
+            case OpCode.JUMP:
+            case OpCode.CMP_LOCAL_IMM_JUMP:
+            case OpCode.CMP_IMM_JUMP:
+                return true;
+            case OpCode.CALL:
+                return p0 == FunctionSelector.USER_DEFINED;
+        }
+        return false;
+    }
+
+    /**
+     * @param address an address in the code segment
+     * @return index of the instruction or -1 if there is no instruction with this address
+     */
+    int getIndex(int address) {
+        int index = Arrays.binarySearch(this.address, address);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * @param index index of an instruction
+     * @return address of the instruction in the bytecode or -1 if the index is wrong
+     */
+    int getAddress(int index) {
+        return index >= 0 && index < count ? address[index] : -1;
+    }
+
+    /**
+     * @return names of native functions called by the code, the index of a name is the index of the function
+     */
+    String[] getNativeFunctionNames() {
+        return nativeFunctionNames;
+    }
+
+    /**
+     * @return the bytecode this code was decoded from
+     */
+    public ByteList getBytecode() {
+        return bytecode;
+    }
+
+    /**
+     * @return number of instructions
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return size of the code segment in the bytecode, i.e. address where the static data begins
+     */
+    public int getCodeSize() {
+        return codeSize;
+    }
+
+    final int[] opcode;
+    final int[] p0;
+    final int[] p1;
+    final int[] p2;
+    final int[] x0;
+    final int[] x1;
+    final int[] x2;
+
+    private final ByteList bytecode;
+    private final int count;
+    private final int[] address;
+    private int codeSize;
+    private String[] nativeFunctionNames;
+    private JitCompiler jit;
+    private int compileThreshold = JitCompiler.DEFAULT_THRESHOLD;
+}
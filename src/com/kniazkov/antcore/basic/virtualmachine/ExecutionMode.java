@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.virtualmachine;
+
+/**
+ * The way the virtual machine dispatches instructions
+ */
+public enum ExecutionMode {
+    /**
+     * Each opcode and each type selector is dispatched through a table of handlers
+     */
+    TABLE,
+
+    /**
+     * Opcodes and type selectors are dispatched by switch statements inside one loop
+     */
+    SWITCH,
+
+    /**
+     * The switch-based engine counts invocations and loop iterations of functions,
+     * and hot functions are compiled to classes of the Java virtual machine (see JitCompiler)
+     */
+    TIERED
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.virtualmachine;
+
+import com.kniazkov.antcore.basic.bytecode.FunctionSelector;
+import com.kniazkov.antcore.basic.bytecode.OpCode;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+
+import static com.kniazkov.antcore.basic.virtualmachine.JvmClassWriter.*;
+
+/**
+ * The JIT compiler: counts invocations and backward jumps of functions of a module
+ * and translates hot functions to hidden classes of the Java virtual machine.
+ * Each instruction becomes a call of the handler of the virtual machine with constant operands,
+ * jumps become jumps of the Java virtual machine, so the code has no dispatch and can be optimized by HotSpot.
+ * One compiler serves all virtual machines that execute the same decoded code
+ */
+final class JitCompiler {
+    static final int DEFAULT_THRESHOLD = 1000;
+
+    JitCompiler(DecodedCode code) {
+        this.code = code;
+        int count = code.getCount();
+        counters = new int[count];
+        functions = new CompiledFunction[count];
+        owners = new int[count];
+        // a function starts with ENTER or, if it has no frame, is found by calls
+        BitSet entries = new BitSet(count);
+        entries.set(0);
+        for (int index = 0; index < count; index++) {
+            if (code.opcode[index] == OpCode.ENTER)
+                entries.set(index);
+            else if (code.opcode[index] == OpCode.CALL && code.p0[index] == FunctionSelector.USER_DEFINED
+                    && code.x0[index] >= 0)
+                entries.set(code.x0[index]);
+        }
+        int entry = 0;
+        for (int index = 0; index < count; index++) {
+            if (entries.get(index))
+                entry = index;
+            owners[index] = entry;
+        }
+        threshold = DEFAULT_THRESHOLD;
+    }
+
+    /**
+     * @param threshold number of invocations and backward jumps after that a function is compiled
+     */
+    void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Counts an invocation of a function
+     * @param entry index of the first instruction of the function
+     * @return the compiled function or null if the function is not compiled yet
+     */
+    CompiledFunction onEnter(int entry) {
+        CompiledFunction function = functions[entry];
+        if (function == null && ++counters[entry] >= threshold)
+            function = compile(entry);
+        return function;
+    }
+
+    /**
+     * Counts a backward jump
+     * @param target index of the target of the jump, i.e. a loop header
+     * @return the compiled function containing the target or null if the function is not compiled yet
+     */
+    CompiledFunction onBackEdge(int target) {
+        return onEnter(owners[target]);
+    }
+
+    /**
+     * @param entry index of the first instruction of the function
+     * @return the compiled function or null if the function is not compiled yet
+     */
+    CompiledFunction getCompiledFunction(int entry) {
+        return functions[entry];
+    }
+
+    private synchronized CompiledFunction compile(int entry) {
+        CompiledFunction function = functions[entry];
+        if (function != null || counters[entry] < 0)
+            return function;
+        try {
+            byte[] bytes = translate(entry);
+            if (bytes != null) {
+                Class<?> type = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+                function = (CompiledFunction) type.getDeclaredConstructor().newInstance();
+                functions[entry] = function;
+                return function;
+            }
+        } catch (ReflectiveOperationException | LinkageError exception) {
+            assert false : exception;
+        }
+        // the function can not be compiled, it remains interpreted
+        counters[entry] = Integer.MIN_VALUE;
+        return null;
+    }
+
+    /**
+     * Translates a function to a class
+     * @param entry index of the first instruction of the function
+     * @return content of the class file or null if the function can not be translated
+     */
+    private byte[] translate(int entry) {
+        int count = code.getCount();
+        BitSet reachable = new BitSet(count);
+        BitSet loopHeaders = new BitSet(count);
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(entry);
+        while (!queue.isEmpty()) {
+            int index = queue.poll();
+            if (index < 0 || index >= count)
+                return null;
+            if (reachable.get(index))
+                continue;
+            reachable.set(index);
+            int opcode = code.opcode[index];
+            int target = code.x0[index];
+            switch (opcode) {
+                case OpCode.RET:
+                case OpCode.END:
+                    break;
+                case OpCode.JUMP:
+                    queue.add(target);
+                    break;
+                case OpCode.IF:
+                case OpCode.CMP_LOCAL_IMM_JUMP:
+                case OpCode.CMP_IMM_JUMP:
+                    queue.add(target);
+                    queue.add(index + 1);
+                    break;
+                case OpCode.CALL:
+                    if (code.p0[index] == FunctionSelector.USER_DEFINED || code.p0[index] == FunctionSelector.NATIVE)
+                        queue.add(index + 1);
+                    break;
+                default:
+                    queue.add(index + 1);
+            }
+            if ((opcode == OpCode.JUMP || opcode == OpCode.IF
+                    || opcode == OpCode.CMP_LOCAL_IMM_JUMP || opcode == OpCode.CMP_IMM_JUMP) && target <= index)
+                loopHeaders.set(target);
+        }
+        loopHeaders.set(entry);
+
+        JvmClassWriter writer = new JvmClassWriter(packageName + "JitFunction" + entry,
+                "java/lang/Object", packageName + "CompiledFunction");
+        JvmClassWriter.Code c = writer.newCode();
+        int[] labels = new int[count];
+        for (int index = reachable.nextSetBit(0); index >= 0; index = reachable.nextSetBit(index + 1))
+            labels[index] = c.newLabel();
+
+        // the prologue jumps to the start instruction
+        int[] keys = loopHeaders.stream().toArray();
+        int[] targets = new int[keys.length];
+        for (int k = 0; k < keys.length; k++)
+            targets[k] = labels[keys[k]];
+        int badStart = c.newLabel();
+        c.local(ILOAD, 2);
+        c.lookupSwitch(badStart, keys, targets);
+        c.mark(badStart);
+        c.local(ALOAD, 1);
+        c.local(ILOAD, 2);
+        c.invoke(INVOKEVIRTUAL, vm, "badInstruction", "(I)V");
+        c.op(RETURN);
+
+        // a backward jump goes through a stub that consumes the budget of the machine
+        int[] backEdges = new int[count];
+        for (int index = reachable.nextSetBit(0); index >= 0; index = reachable.nextSetBit(index + 1)) {
+            if (isBackEdge(index))
+                backEdges[index] = c.newLabel();
+        }
+
+        for (int index = reachable.nextSetBit(0); index >= 0; index = reachable.nextSetBit(index + 1)) {
+            c.mark(labels[index]);
+            translateInstruction(c, index, labels, backEdges);
+        }
+
+        for (int index = reachable.nextSetBit(0); index >= 0; index = reachable.nextSetBit(index + 1)) {
+            if (isBackEdge(index)) {
+                int target = code.x0[index];
+                c.mark(backEdges[index]);
+                callHandler(c, "consumeBudget", "(II)Z", index - target + 1, target);
+                c.jump(IFNE, labels[target]);
+                c.op(RETURN);
+            }
+        }
+
+        if (!writer.addMethod(ACC_PUBLIC, "run", "(" + vmType + "I)V", c, 10, 4))
+            return null;
+        return writer.toByteArray();
+    }
+
+    /**
+     * @param index index of an instruction
+     * @return true if the instruction is a jump to a preceding instruction, i.e. to a loop header
+     */
+    private boolean isBackEdge(int index) {
+        switch (code.opcode[index]) {
+            case OpCode.IF:
+            case OpCode.JUMP:
+            case OpCode.CMP_LOCAL_IMM_JUMP:
+            case OpCode.CMP_IMM_JUMP:
+                return code.x0[index] <= index;
+        }
+        return false;
+    }
+
+    private void translateInstruction(JvmClassWriter.Code c, int index, int[] labels, int[] backEdges) {
+        int opcode = code.opcode[index];
+        int p0 = (byte) code.p0[index];
+        int p1 = (byte) code.p1[index];
+        int p2 = (byte) code.p2[index];
+        int x0 = code.x0[index];
+        int x1 = code.x1[index];
+        int x2 = code.x2[index];
+        switch (opcode) {
+            case OpCode.NOP:
+                break;
+            case OpCode.LOAD:
+                addToSP(c, -x0);
+                setIP(c, index);
+                callHandler(c, "execLoad", "(BII)Z", p0, x0, x1);
+                checkResult(c, index);
+                break;
+            case OpCode.STORE:
+                callHandler(c, "execStore", "(BII)Z", p0, x0, x1);
+                checkResult(c, index);
+                addToSP(c, x0);
+                break;
+            case OpCode.CAST:
+                setIP(c, index);
+                callHandler(c, "execCast", "(BB)Z", p0, p1);
+                checkResult(c, index);
+                break;
+            case OpCode.POP:
+                addToSP(c, x0);
+                break;
+            case OpCode.DUP:
+                callHandler(c, "execDup", "(I)V", x0);
+                break;
+            case OpCode.CALL:
+                if (p0 == FunctionSelector.USER_DEFINED) {
+                    callHandler(c, "pushInteger", "(I)V", index + 1);
+                    callHandler(c, "callFunction", "(I)V", x0);
+                    checkPower(c);
+                }
+                else if (p0 == FunctionSelector.NATIVE) {
+                    callHandler(c, "pushInteger", "(I)V", index + 1);
+                    setIP(c, index);
+                    callHandler(c, "execNativeCall", "(I)V", x0);
+                    checkPower(c);
+                }
+                else
+                    badInstruction(c, index);
+                break;
+            case OpCode.RET:
+                callHandler(c, "execReturn", "()V");
+                c.op(RETURN);
+                break;
+            case OpCode.ENTER: {
+                int enter = c.newLabel();
+                callHandler(c, "consumeBudget", "(II)Z", 1, index);
+                c.jump(IFNE, enter);
+                c.op(RETURN);
+                c.mark(enter);
+                callHandler(c, "execEnter", "(I)V", x0);
+                break;
+            }
+            case OpCode.LEAVE:
+                callHandler(c, "execLeave", "(I)V", x0);
+                break;
+            case OpCode.ADD:
+                callTypedHandler(c, index, "execAdd", p0);
+                break;
+            case OpCode.SUB:
+                callTypedHandler(c, index, "execSub", p0);
+                break;
+            case OpCode.MUL:
+                callTypedHandler(c, index, "execMul", p0);
+                break;
+            case OpCode.DIV:
+                callTypedHandler(c, index, "execDiv", p0);
+                break;
+            case OpCode.MOD:
+                callTypedHandler(c, index, "execMod", p0);
+                break;
+            case OpCode.AND:
+            case OpCode.OR:
+            case OpCode.XOR:
+            case OpCode.SHL:
+            case OpCode.SHR:
+                setIP(c, index);
+                callHandler(c, "execBitwise", "(BB)Z", opcode, p0);
+                checkResult(c, index);
+                break;
+            case OpCode.NEG:
+                callTypedHandler(c, index, "execNeg", p0);
+                break;
+            case OpCode.NOT:
+                callTypedHandler(c, index, "execNot", p0);
+                break;
+            case OpCode.CMP:
+                setIP(c, index);
+                callHandler(c, "execCompare", "(BB)Z", p0, p1);
+                checkResult(c, index);
+                break;
+            case OpCode.SIGN:
+                callTypedHandler(c, index, "execSign", p0);
+                break;
+            case OpCode.IF:
+                callHandler(c, "popBoolean", "()Z");
+                c.jump(p0 > 0 ? IFNE : IFEQ, isBackEdge(index) ? backEdges[index] : labels[x0]);
+                break;
+            case OpCode.JUMP:
+                c.jump(GOTO, isBackEdge(index) ? backEdges[index] : labels[x0]);
+                break;
+            case OpCode.ADD_LOCAL_IMM:
+                c.local(ALOAD, 1);
+                c.pushInt(p0);
+                loadLocalAddress(c, x0);
+                c.pushInt(x1);
+                c.pushInt(x2);
+                c.invoke(INVOKEVIRTUAL, vm, "addLocalImmediate", "(BIII)Z");
+                checkResult(c, index);
+                break;
+            case OpCode.ADD_LOCALS:
+                c.local(ALOAD, 1);
+                c.pushInt(p0);
+                loadLocalAddress(c, x0);
+                loadLocalAddress(c, x1);
+                loadLocalAddress(c, x2);
+                c.invoke(INVOKEVIRTUAL, vm, "addLocals", "(BIII)Z");
+                checkResult(c, index);
+                break;
+            case OpCode.CMP_LOCAL_IMM_JUMP:
+                c.local(ALOAD, 1);
+                c.pushInt(p0);
+                c.pushInt(p1);
+                loadLocalAddress(c, x1);
+                c.pushInt(x2);
+                c.invoke(INVOKEVIRTUAL, vm, "compareLocalWithImmediate", "(BBII)I");
+                checkComparison(c, index, p2, isBackEdge(index) ? backEdges[index] : labels[x0]);
+                break;
+            case OpCode.CMP_IMM_JUMP:
+                callHandler(c, "compareImmediateWithStack", "(BBI)I", p0, p1, x1);
+                checkComparison(c, index, p2, isBackEdge(index) ? backEdges[index] : labels[x0]);
+                break;
+            case OpCode.CALC:
+                callHandler(c, "calculate", "(BBBIII)Z", p0, p1, p2, x0, x1, x2);
+                checkResult(c, index);
+                break;
+            case OpCode.CONCAT:
+                callHandler(c, "concatenate", "(III)Z", x0, x1, x2);
+                checkResult(c, index);
+                break;
+            case OpCode.END:
+                c.local(ALOAD, 1);
+                c.pushInt(0);
+                c.field(PUTFIELD, vm, "power", "Z");
+                c.op(RETURN);
+                break;
+            default:
+                badInstruction(c, index);
+        }
+    }
+
+    private static void callHandler(JvmClassWriter.Code c, String name, String descriptor, int... arguments) {
+        c.local(ALOAD, 1);
+        for (int argument : arguments)
+            c.pushInt(argument);
+        c.invoke(INVOKEVIRTUAL, vm, name, descriptor);
+    }
+
+    /**
+     * Calls a handler that takes a type selector, such handlers may read other fields of the instruction
+     */
+    private static void callTypedHandler(JvmClassWriter.Code c, int index, String name, int type) {
+        setIP(c, index);
+        callHandler(c, name, "(B)Z", type);
+        checkResult(c, index);
+    }
+
+    private static void setIP(JvmClassWriter.Code c, int index) {
+        c.local(ALOAD, 1);
+        c.pushInt(index);
+        c.field(PUTFIELD, vm, "IP", "I");
+    }
+
+    private static void addToSP(JvmClassWriter.Code c, int value) {
+        c.local(ALOAD, 1);
+        c.local(ALOAD, 1);
+        c.field(GETFIELD, vm, "SP", "I");
+        c.pushInt(value);
+        c.op(IADD);
+        c.field(PUTFIELD, vm, "SP", "I");
+    }
+
+    private static void loadLocalAddress(JvmClassWriter.Code c, int offset) {
+        c.local(ALOAD, 1);
+        c.field(GETFIELD, vm, "LP", "I");
+        c.pushInt(offset);
+        c.op(IADD);
+    }
+
+    private static void badInstruction(JvmClassWriter.Code c, int index) {
+        callHandler(c, "badInstruction", "(I)V", index);
+        c.op(RETURN);
+    }
+
+    /**
+     * Leaves the function if the handler returned false
+     */
+    private static void checkResult(JvmClassWriter.Code c, int index) {
+        int next = c.newLabel();
+        c.jump(IFNE, next);
+        badInstruction(c, index);
+        c.mark(next);
+    }
+
+    /**
+     * Leaves the function if the machine was stopped by a called function
+     */
+    private static void checkPower(JvmClassWriter.Code c) {
+        int next = c.newLabel();
+        c.local(ALOAD, 1);
+        c.field(GETFIELD, vm, "power", "Z");
+        c.jump(IFNE, next);
+        c.op(RETURN);
+        c.mark(next);
+    }
+
+    /**
+     * Jumps by the result of a comparison: 1 if true, 0 if false, -1 if the instruction is malformed
+     */
+    private static void checkComparison(JvmClassWriter.Code c, int index, int condition, int target) {
+        int valid = c.newLabel();
+        c.local(ISTORE, 3);
+        c.local(ILOAD, 3);
+        c.jump(IFGE, valid);
+        badInstruction(c, index);
+        c.mark(valid);
+        c.local(ILOAD, 3);
+        c.jump(condition > 0 ? IFNE : IFEQ, target);
+    }
+
+    private static final String packageName = "com/kniazkov/antcore/basic/virtualmachine/";
+    private static final String vm = packageName + "VirtualMachine";
+    private static final String vmType = "L" + vm + ";";
+
+    private final DecodedCode code;
+    private final int[] counters;
+    private final CompiledFunction[] functions;
+    private final int[] owners;
+    private int threshold;
+}
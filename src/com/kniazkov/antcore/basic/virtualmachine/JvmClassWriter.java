@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.basic.virtualmachine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The minimal writer of class files of the Java virtual machine, it supports only what the JIT compiler needs:
+ * one class with a default constructor and methods that operate on integers and references.
+ * Classes have version 49, so methods do not need stack map frames
+ */
+final class JvmClassWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int ISTORE = 0x36;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int IFGE = 0x9C;
+    static final int GOTO = 0xA7;
+    static final int RETURN = 0xB1;
+    static final int GETFIELD = 0xB4;
+    static final int PUTFIELD = 0xB5;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+
+    /**
+     * The code of a method
+     */
+    final class Code {
+        private Code() {
+            buff = new ByteArrayOutputStream();
+            labels = new ArrayList<>();
+            jumps = new ArrayList<>();
+            switches = new ArrayList<>();
+        }
+
+        /**
+         * @return a new label that is not bound to a position
+         */
+        int newLabel() {
+            labels.add(-1);
+            return labels.size() - 1;
+        }
+
+        /**
+         * Binds a label to the current position
+         * @param label the label
+         */
+        void mark(int label) {
+            labels.set(label, buff.size());
+        }
+
+        void op(int opcode) {
+            buff.write(opcode);
+        }
+
+        void local(int opcode, int index) {
+            assert (index < 256);
+            buff.write(opcode);
+            buff.write(index);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                buff.write(0x03 + value); // ICONST_M1 ... ICONST_5
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                buff.write(0x10); // BIPUSH
+                buff.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                buff.write(0x11); // SIPUSH
+                writeShort(value);
+            } else {
+                buff.write(0x13); // LDC_W
+                writeShort(integer(value));
+            }
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            buff.write(opcode);
+            writeShort(member(9, owner, name, descriptor));
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            buff.write(opcode);
+            writeShort(member(10, owner, name, descriptor));
+        }
+
+        /**
+         * Writes a jump instruction
+         * @param opcode opcode of a conditional jump or GOTO
+         * @param label the target
+         */
+        void jump(int opcode, int label) {
+            jumps.add(new int[] { buff.size(), buff.size() + 1, label });
+            buff.write(opcode);
+            writeShort(0);
+        }
+
+        /**
+         * Writes the LOOKUPSWITCH instruction
+         * @param defaultLabel the target if no key matches
+         * @param keys keys in ascending order
+         * @param targets labels of the keys
+         */
+        void lookupSwitch(int defaultLabel, int[] keys, int[] targets) {
+            int position = buff.size();
+            buff.write(0xAB);
+            while (buff.size() % 4 != 0)
+                buff.write(0);
+            switches.add(new int[] { position, buff.size(), defaultLabel });
+            writeInt(0);
+            writeInt(keys.length);
+            for (int k = 0; k < keys.length; k++) {
+                writeInt(keys[k]);
+                switches.add(new int[] { position, buff.size(), targets[k] });
+                writeInt(0);
+            }
+        }
+
+        private void writeShort(int value) {
+            buff.write(value >> 8);
+            buff.write(value);
+        }
+
+        private void writeInt(int value) {
+            writeShort(value >> 16);
+            writeShort(value);
+        }
+
+        /**
+         * @return the bytecode with resolved jumps or null if the code is too large
+         */
+        private byte[] toByteArray() {
+            byte[] code = buff.toByteArray();
+            if (code.length > Short.MAX_VALUE)
+                return null;
+            for (int[] jump : jumps) {
+                int offset = labels.get(jump[2]) - jump[0];
+                code[jump[1]] = (byte) (offset >> 8);
+                code[jump[1] + 1] = (byte) offset;
+            }
+            for (int[] item : switches) {
+                int offset = labels.get(item[2]) - item[0];
+                for (int k = 0; k < 4; k++)
+                    code[item[1] + k] = (byte) (offset >> (24 - k * 8));
+            }
+            return code;
+        }
+
+        private final ByteArrayOutputStream buff;
+        private final List<Integer> labels;
+        private final List<int[]> jumps;
+        private final List<int[]> switches;
+    }
+
+    /**
+     * Creates a writer of a public final class with a public default constructor
+     * @param name internal name of the class
+     * @param superName internal name of the super class
+     * @param interfaceName internal name of the interface that the class implements
+     */
+    JvmClassWriter(String name, String superName, String interfaceName) {
+        pool = new ByteArrayOutputStream();
+        constants = new HashMap<>();
+        methods = new ByteArrayOutputStream();
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        interfaceClass = classRef(interfaceName);
+
+        Code constructor = newCode();
+        constructor.local(ALOAD, 0);
+        constructor.invoke(INVOKESPECIAL, superName, "<init>", "()V");
+        constructor.op(RETURN);
+        addMethod(ACC_PUBLIC, "<init>", "()V", constructor, 1, 1);
+    }
+
+    Code newCode() {
+        return new Code();
+    }
+
+    /**
+     * Adds a method
+     * @param access access flags
+     * @param name the name
+     * @param descriptor the descriptor
+     * @param code the code
+     * @param maxStack maximum depth of the operand stack
+     * @param maxLocals number of local variables including arguments
+     * @return false if the code is too large
+     */
+    boolean addMethod(int access, String name, String descriptor, Code code, int maxStack, int maxLocals) {
+        byte[] bytes = code.toByteArray();
+        if (bytes == null)
+            return false;
+        DataOutputStream out = new DataOutputStream(methods);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1); // attributes: Code
+            out.writeShort(utf8("Code"));
+            out.writeInt(12 + bytes.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(0); // exceptions
+            out.writeShort(0); // attributes
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+        methodCount++;
+        return true;
+    }
+
+    /**
+     * @return content of the class file
+     */
+    byte[] toByteArray() {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(result);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);  // minor version
+            out.writeShort(49); // major version
+            out.writeShort(poolSize);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(interfaceClass);
+            out.writeShort(0); // fields
+            out.writeShort(methodCount);
+            methods.writeTo(out);
+            out.writeShort(0); // attributes
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+        return result.toByteArray();
+    }
+
+    private int utf8(String value) {
+        return constant("U" + value, 1, out -> out.writeUTF(value));
+    }
+
+    private int integer(int value) {
+        return constant("I" + value, 3, out -> out.writeInt(value));
+    }
+
+    private int classRef(String name) {
+        int index = utf8(name);
+        return constant("C" + name, 7, out -> out.writeShort(index));
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        return constant("N" + name + ' ' + descriptor, 12, out -> {
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+    }
+
+    private int member(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameAndTypeIndex = nameAndType(name, descriptor);
+        return constant("M" + tag + owner + '.' + name + ' ' + descriptor, tag, out -> {
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndTypeIndex);
+        });
+    }
+
+    private interface ConstantWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int constant(String key, int tag, ConstantWriter writer) {
+        Integer index = constants.get(key);
+        if (index == null) {
+            DataOutputStream out = new DataOutputStream(pool);
+            try {
+                out.writeByte(tag);
+                writer.write(out);
+            } catch (IOException exception) {
+                throw new IllegalStateException(exception);
+            }
+            index = poolSize++;
+            constants.put(key, index);
+        }
+        return index;
+    }
+
+    private final ByteArrayOutputStream pool;
+    private final Map<String, Integer> constants;
+    private final ByteArrayOutputStream methods;
+    private int poolSize = 1;
+    private int methodCount = 0;
+    private final int thisClass;
+    private final int superClass;
+    private final int interfaceClass;
+}
@@ -30,8 +30,7 @@ public class StandardLibrary {
 
             functions.put("print", (memory, SP) -> {
                 int address = memory.getInt(SP + 4);
-                StringData string = StringData.read(memory, address);
-                System.out.print(string);
+                System.out.print(StringData.getString(memory, address));
             });
 
             functions.put("chr", (memory, SP) -> {
@@ -17,9 +17,12 @@
 package com.kniazkov.antcore.basic.virtualmachine;
 
 import com.kniazkov.antcore.lib.ByteBuffer;
+import com.kniazkov.antcore.lib.ByteList;
 
 /**
- * String that can be converted from/to byte array
+ * String that can be converted from/to byte array.
+ * In the memory of the virtual machine a string is stored as length (4 bytes), capacity (4 bytes)
+ * and 'capacity' UTF-16 characters; static methods that take the memory work with strings in place
  */
 public class StringData {
     public int length;
@@ -29,7 +32,7 @@ public class StringData {
     public static StringData read(ByteBuffer memory, int address) {
         StringData string = new StringData();
         string.length = memory.getInt(address);
-        string.capacity = memory.get(address + 4);
+        string.capacity = memory.getInt(address + 4);
         string.data = new byte[string.length * 2];
         memory.copy(address + 8, string.data, 0, string.length * 2);
         return string;
@@ -59,6 +62,96 @@ public class StringData {
         }
     }
 
+    /**
+     * Reads a string from the memory
+     * @param memory the memory
+     * @param address address of the string
+     * @return a Java string
+     */
+    public static String getString(ByteList memory, int address) {
+        int length = memory.getInt(address);
+        char[] chars = new char[length];
+        for (int k = 0; k < length; k++)
+            chars[k] = memory.getChar(address + 8 + k * 2);
+        return new String(chars);
+    }
+
+    /**
+     * Writes a sequence of characters to the memory as a string, cuts it if it is longer than capacity
+     * @param memory the memory
+     * @param address address of the string
+     * @param value the sequence
+     * @param capacity capacity of the string
+     */
+    public static void write(ByteBuffer memory, int address, CharSequence value, int capacity) {
+        int length = Math.min(value.length(), capacity);
+        memory.setInt(address, length);
+        memory.setInt(address + 4, capacity);
+        for (int k = 0; k < length; k++)
+            memory.setChar(address + 8 + k * 2, value.charAt(k));
+    }
+
+    /**
+     * Compares two strings in the memory lexicographically, as String.compareTo() does
+     * @param memory the memory
+     * @param address1 address of the first string
+     * @param address2 address of the second string
+     * @return zero if the strings are equal, a negative value if the first string is less, a positive otherwise
+     */
+    public static int compare(ByteBuffer memory, int address1, int address2) {
+        int length1 = memory.getInt(address1);
+        int length2 = memory.getInt(address2);
+        int length = Math.min(length1, length2);
+        for (int k = 0; k < length; k++) {
+            char c1 = memory.getChar(address1 + 8 + k * 2);
+            char c2 = memory.getChar(address2 + 8 + k * 2);
+            if (c1 != c2)
+                return c1 - c2;
+        }
+        return length1 - length2;
+    }
+
+    /**
+     * Concatenates two strings in the memory. The result may overlap both operands if it is placed
+     * not lower than the first operand, as the stack of the virtual machine does
+     * @param memory the memory
+     * @param address1 address of the first string
+     * @param address2 address of the second string, follows the first one
+     * @param result address of the result
+     * @param capacity capacity of the result
+     */
+    public static void concat(ByteBuffer memory, int address1, int address2, int result, int capacity) {
+        int length1 = Math.min(memory.getInt(address1), capacity);
+        int length2 = Math.min(memory.getInt(address2), capacity - length1);
+        int to1 = result + 8;
+        int to2 = to1 + length1 * 2;
+        int from2 = address2 + 8;
+        if (to1 + length1 * 2 <= from2) {
+            memory.move(address1 + 8, to1, length1 * 2);
+            memory.move(from2, to2, length2 * 2);
+        }
+        else {
+            memory.move(from2, to2, length2 * 2);
+            memory.move(address1 + 8, to1, length1 * 2);
+        }
+        memory.setInt(result, length1 + length2);
+        memory.setInt(result + 4, capacity);
+    }
+
+    /**
+     * Moves a string in the memory and changes its capacity, cuts the string if it becomes longer than capacity
+     * @param memory the memory
+     * @param address address of the string
+     * @param newAddress new address of the string
+     * @param capacity new capacity
+     */
+    public static void resize(ByteBuffer memory, int address, int newAddress, int capacity) {
+        int length = Math.min(memory.getInt(address), capacity);
+        memory.move(address + 8, newAddress + 8, length * 2);
+        memory.setInt(newAddress, length);
+        memory.setInt(newAddress + 4, capacity);
+    }
+
     @Override
     public String toString() {
         if (length == 0)
@@ -66,7 +159,7 @@ public class StringData {
 
         StringBuilder buff = new StringBuilder(length);
         for (int k = 0; k < length * 2 && k < data.length; k += 2) {
-            char c = (char) ((int)data[k] + ((int)data[k + 1] << 8));
+            char c = (char) ((data[k] & 0xFF) | ((data[k + 1] & 0xFF) << 8));
             buff.append(c);
         }
         return buff.toString();
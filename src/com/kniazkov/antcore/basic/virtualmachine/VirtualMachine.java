@@ -16,6 +16,12 @@
  */
 package com.kniazkov.antcore.basic.virtualmachine;
 
+import com.kniazkov.antcore.basic.bytecode.ComparatorSelector;
+import com.kniazkov.antcore.basic.bytecode.DataSelector;
+import com.kniazkov.antcore.basic.bytecode.FunctionSelector;
+import com.kniazkov.antcore.basic.bytecode.OpCode;
+import com.kniazkov.antcore.basic.bytecode.OperandSelector;
+import com.kniazkov.antcore.basic.bytecode.TypeSelector;
 import com.kniazkov.antcore.lib.ByteBuffer;
 import com.kniazkov.antcore.lib.ByteList;
 import com.kniazkov.antcore.lib.FixedPoint;
@@ -27,26 +33,116 @@ import java.util.Map;
  */
 public class VirtualMachine {
     public VirtualMachine(ByteList code, int memorySize, Map<String, NativeFunction> functions) {
-        memory = new ByteBuffer(memorySize);
-        memory.setByteList(0, code);
-        this.functions = functions;
+        this(code, memorySize, functions, ExecutionMode.TABLE);
+    }
+
+    public VirtualMachine(ByteList code, int memorySize, Map<String, NativeFunction> functions,
+                          ExecutionMode mode) {
+        this(DecodedCode.decode(code), memorySize, functions, mode);
+    }
+
+    public VirtualMachine(DecodedCode code, int memorySize, Map<String, NativeFunction> functions,
+                          ExecutionMode mode) {
+        this(code, loadStaticData(code, new ByteBuffer(memorySize)), functions, mode);
+    }
+
+    /**
+     * Creates a virtual machine that uses the given buffer as its memory
+     * @param code decoded code
+     * @param memory the memory that already contains the static data (see DecodedCode.loadStaticData()),
+     *               its size must be greater than size of the bytecode
+     * @param functions native functions
+     * @param mode execution mode
+     * @throws NativeFunctionNotFound if the code calls a native function that is not provided
+     */
+    public VirtualMachine(DecodedCode code, ByteBuffer memory, Map<String, NativeFunction> functions,
+                          ExecutionMode mode) {
+        this.code = code;
+        this.memory = memory;
+        this.mode = mode;
 
         real0 = new FixedPoint();
         real1 = new FixedPoint();
+        text = new StringBuilder();
+        natives = bindNativeFunctions(code, functions);
+        jit = mode == ExecutionMode.TIERED ? code.getJitCompiler() : null;
+    }
+
+    private static ByteBuffer loadStaticData(DecodedCode code, ByteBuffer memory) {
+        code.loadStaticData(memory);
+        return memory;
+    }
+
+    /**
+     * Finds native functions called by the code, so a call takes a function by its index without checks
+     * @param code the code
+     * @param functions native functions by names
+     * @return native functions by indexes
+     * @throws NativeFunctionNotFound if some function called by the code is not found
+     */
+    private static NativeFunction[] bindNativeFunctions(DecodedCode code, Map<String, NativeFunction> functions) {
+        String[] names = code.getNativeFunctionNames();
+        NativeFunction[] natives = new NativeFunction[names.length];
+        for (int ip = 0; ip < code.getCount(); ip++) {
+            if (code.opcode[ip] != OpCode.CALL || code.p0[ip] != FunctionSelector.NATIVE)
+                continue;
+            int index = code.x0[ip];
+            // an index can be wrong if the code is not produced by the compiler
+            if (index < 0 || index >= names.length || names[index] == null)
+                throw new NativeFunctionNotFound(index);
+            if (natives[index] == null) {
+                natives[index] = functions.get(names[index]);
+                if (natives[index] == null)
+                    throw new NativeFunctionNotFound(names[index]);
+            }
+        }
+        return natives;
     }
 
     /**
      * Starts execution
      */
     public void run() {
-        IP = 0;
-        SP = memory.size();
-        LP = SP;
+        suspended = false;
+        run(Long.MAX_VALUE);
+    }
+
+    /**
+     * Starts execution or resumes it if the machine was suspended, the execution is suspended again
+     * when the budget is exhausted. The budget is consumed by backward jumps (each one costs the number
+     * of instructions of the loop) and by entries to functions, so it approximates the number
+     * of executed instructions and bounds the time of the call
+     * @param maxInstructions the budget
+     * @return true if the program is completed, false if the machine is suspended
+     */
+    public boolean run(long maxInstructions) {
+        if (!suspended) {
+            IP = 0;
+            SP = memory.size();
+            LP = SP;
+        }
+        suspended = false;
         power = true;
         error = ErrorCode.OK;
-        while(power) {
-            units[readOpcode()].exec();
+        budget = maxInstructions;
+        nesting = 0;
+        if (mode != ExecutionMode.TABLE) {
+            runSwitch(-1);
         }
+        else {
+            while (power) {
+                units[readOpcode()].exec();
+            }
+        }
+        return !suspended;
+    }
+
+    /**
+     * @return true if the execution was suspended because the budget was exhausted,
+     * the next call of run(maxInstructions) resumes it
+     */
+    public boolean isSuspended() {
+        return suspended;
     }
 
     /**
@@ -69,51 +165,81 @@ public class VirtualMachine {
         memory.setArray(address, buffer, 0, size);
     }
 
+    /**
+     * Writes a part of an auxiliary buffer to the internal memory
+     * @param address the address of the first byte
+     * @param buffer the aux buffer
+     * @param fromIndex the index of the first byte in the aux buffer
+     * @param size size
+     */
+    public void write(int address, byte[] buffer, int fromIndex, int size) {
+        memory.setArray(address, buffer, fromIndex, size);
+    }
+
+    /**
+     * Stops the machine and releases its memory, the machine can not be used after that
+     */
+    public void release() {
+        power = false;
+        suspended = false;
+        memory.release();
+    }
+
     public ErrorCode getErrorCode() {
         return error;
     }
 
     public int getInstructionPointer() {
-        return IP;
+        return code.getAddress(IP);
     }
 
+    DecodedCode code;
     ByteBuffer memory;
-    Map<String, NativeFunction> functions;
+    ExecutionMode mode;
     boolean power;
+    boolean suspended;  // the execution is stopped by the budget and can be resumed
+    long budget;        // number of instructions the machine can execute before it is suspended
     ErrorCode error;
-    int IP;             // instruction pointer
+    int IP;             // instruction pointer, i.e. index of the current instruction
     int SP;             // stack pointer
     int LP;             // local pointer
 
     FixedPoint real0;
     FixedPoint real1;
+    StringBuilder text;
+    byte[] chars;       // the auxiliary buffer for concatenation of strings
+    NativeFunction[] natives;   // native functions called by the code, by indexes
+    JitCompiler jit;    // null if the mode is not tiered
+    int nesting;        // number of compiled functions executed at the moment
+
+    private static final int maxNesting = 256;
 
     final byte readOpcode() {
-        return memory.get(IP);
+        return (byte) code.opcode[IP];
     }
 
     final byte read_p0() {
-        return memory.get(IP + 1);
+        return (byte) code.p0[IP];
     }
 
     final byte read_p1() {
-        return memory.get(IP + 2);
+        return (byte) code.p1[IP];
     }
 
     final byte read_p2() {
-        return memory.get(IP + 3);
+        return (byte) code.p2[IP];
     }
 
     final int read_x0() {
-        return memory.getInt(IP + 4);
+        return code.x0[IP];
     }
 
     final int read_x1() {
-        return memory.getInt(IP + 8);
+        return code.x1[IP];
     }
 
     final int read_x2() {
-        return memory.getInt(IP + 12);
+        return code.x2[IP];
     }
 
     final void move(int fromPos, int toPos, int size) {
@@ -208,7 +334,7 @@ public class VirtualMachine {
                 move(LP + read_x1(), SP, size);
             },
             (size) -> { // 2 -> IMMEDIATE
-                move(IP + 8, SP, size);
+                loadImmediate(size, read_x1(), read_x2());
             },
             (size) -> { // 3 -> LOCAL_POINTER
                 assert (size == 4);
@@ -220,6 +346,30 @@ public class VirtualMachine {
             }
     };
 
+    /**
+     * Places the immediate value stored in the 'x1' and 'x2' fields of an instruction to the stack
+     */
+    final void loadImmediate(int size, int low, int high) {
+        switch (size) {
+            case 1:
+                memory.set(SP, (byte) low);
+                break;
+            case 2:
+                memory.setShort(SP, (short) low);
+                break;
+            case 4:
+                memory.setInt(SP, low);
+                break;
+            case 8:
+                memory.setLong(SP, ((long) high << 32) | (low & 0xFFFFFFFFL));
+                break;
+            default:
+                long value = ((long) high << 32) | (low & 0xFFFFFFFFL);
+                for (int k = 0; k < size; k++)
+                    memory.set(SP + k, k < 8 ? (byte) (value >> (k * 8)) : 0);
+        }
+    }
+
     interface Store {
         void exec(int size);
     }
@@ -286,18 +436,20 @@ public class VirtualMachine {
             stub    // 10 -> STRUCT
     };
 
-    void castAnyToString(String strValue, int currentSize) {
+    void castAnyToString(CharSequence strValue, int currentSize) {
         int newSize = read_x1();
         int capacity = (newSize - 8) / 2;
-        int strValueLength = strValue.length();
-        assert (capacity >= strValueLength);
+        assert (capacity >= strValue.length());
         SP -= newSize - currentSize;
-        memory.setInt(SP, strValueLength);
-        memory.setInt(SP + 4, capacity);
-        for (int k = 0; k < strValueLength; k++) {
-            char ch = strValue.charAt(k);
-            memory.setChar(SP + 8 + k * 2, ch);
-        }
+        StringData.write(memory, SP, strValue, capacity);
+    }
+
+    /**
+     * @return the auxiliary buffer for converting values to strings, cleared
+     */
+    StringBuilder getText() {
+        text.setLength(0);
+        return text;
     }
 
     final Unit[] castToString = {
@@ -310,42 +462,32 @@ public class VirtualMachine {
             stub,   // 3 -> BYTE
             () -> { // 4 -> SHORT
                 assert(read_x0() == 2);
-                castAnyToString(String.valueOf(memory.getShort(SP)), 2);
+                castAnyToString(getText().append(memory.getShort(SP)), 2);
             },
             () -> { // 5 -> INTEGER
                 assert(read_x0() == 4);
-                castAnyToString(String.valueOf(memory.getInt(SP)), 4);
+                castAnyToString(getText().append(memory.getInt(SP)), 4);
             },
             () -> { // 6 -> LONG
                 assert(read_x0() == 8);
-                castAnyToString(String.valueOf(memory.getLong(SP)), 8);
+                castAnyToString(getText().append(memory.getLong(SP)), 8);
             },
             () -> { // 7 -> REAL
                 assert(read_x0() == 8);
                 long value = memory.getLong(SP);
                 real0.setFixedAsLong(value);
-                castAnyToString(real0.toString(), 8);
+                StringBuilder text = getText();
+                real0.appendTo(text);
+                castAnyToString(text, 8);
             },
             () -> { // 8 -> STRING
                 int currSize = read_x0();
                 int newSize = read_x1();
-                if (newSize > currSize) {
-                    int diff = newSize - currSize;
-                    assert(diff % 2 == 0);
-                    StringData string = StringData.read(memory, SP);
-                    SP = SP - diff;
-                    string.capacity += diff / 2;
-                    string.write(memory, SP);
-                }
-                else if (currSize > newSize) {
-                    int diff = currSize - newSize;
-                    assert(diff % 2 == 0);
-                    StringData string = StringData.read(memory, SP);
-                    SP = SP + diff;
-                    string.capacity -= diff / 2;
-                    if (string.length > string.capacity)
-                        string.length = string.capacity;
-                    string.write(memory, SP);
+                if (newSize != currSize) {
+                    assert((newSize - currSize) % 2 == 0);
+                    int newSP = SP + currSize - newSize;
+                    StringData.resize(memory, SP, newSP, (newSize - 8) / 2);
+                    SP = newSP;
                 }
             },
             stub,   // 9 -> ARRAY
@@ -376,15 +518,7 @@ public class VirtualMachine {
 
     final Unit[] call = {
             () -> { // 0 -> NATIVE
-                StringData functionName = StringData.read(memory, read_x0());
-                NativeFunction function = functions.get(functionName.toString());
-                if (function == null) {
-                    power = false;
-                    error = ErrorCode.FUNCTION_NOT_DEFINED;
-                    return;
-                }
-                function.exec(memory, SP);
-                IP = popInteger();
+                execNativeCall(read_x0());
             },
             () -> { // 1 -> USER_DEFINED
                 IP = read_x0();
@@ -414,16 +548,11 @@ public class VirtualMachine {
                 pushReal(real0);
             },
             () -> { // 8 -> STRING
-                StringData str1 = StringData.read(memory, SP);
-                SP = SP + read_x0();
-                StringData str2 = StringData.read(memory, SP);
-                SP = SP + read_x1();
-                StringData result = new StringData();
+                int address1 = SP;
+                int address2 = SP + read_x0();
                 int resultLength = read_x2();
-                result.capacity = (resultLength - 8) / 2;
-                StringData.concat(result, str1, str2);
-                SP = SP - resultLength;
-                result.write(memory, SP);
+                SP = address2 + read_x1() - resultLength;
+                StringData.concat(memory, address1, address2, SP, (resultLength - 8) / 2);
             },
             stub,   // 9 -> ARRAY
             stub    // 10 -> STRUCT
@@ -476,7 +605,7 @@ public class VirtualMachine {
             () -> { // 4 -> SHORT
                 short left = popShort();
                 short right = popShort();
-                pushInteger((int) (left * right));
+                pushInteger(left * right);
             },
             () -> { // 5 -> INTEGER
                 int left = popInteger();
@@ -491,7 +620,7 @@ public class VirtualMachine {
             () -> { // 7 -> REAL
                 popReal(real0);
                 popReal(real1);
-                FixedPoint.sub(real0, real0, real1);
+                FixedPoint.mul(real0, real0, real1);
                 pushReal(real0);
             },
             stub,   // 8 -> STRING
@@ -858,11 +987,10 @@ public class VirtualMachine {
     };
 
     int compareTwoStringsFromStack() {
-        StringData str1 = StringData.read(memory, SP);
-        SP = SP + read_x0();
-        StringData str2 = StringData.read(memory, SP);
-        SP = SP + read_x1();
-        return str1.toString().compareTo(str2.toString());
+        int address1 = SP;
+        int address2 = SP + read_x0();
+        SP = address2 + read_x1();
+        return StringData.compare(memory, address1, address2);
     }
 
     final Unit[] compareString = {
@@ -951,36 +1079,36 @@ public class VirtualMachine {
 
     final Unit[] units = {
             () -> { // 0 -> NOP
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 1 -> LOAD
                 int size = read_x0();
                 SP = SP - size;
                 load[read_p0()].exec(size);
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 2 -> STORE
                 int size = read_x0();
                 store[read_p0()].exec(size);
                 SP = SP + size;
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 3 -> CAST
                 cast[read_p1()].exec();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 4 -> POP
                 SP = SP + read_x0();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 5 -> DUP
                 int size = read_x0();
                 SP = SP - size;
                 move(SP + size, SP, size);
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 6 -> CALL
-                pushInteger(IP + 16);
+                pushInteger(IP + 1);
                 call[read_p0()].exec();
             },
             () -> { // 7 -> RET
@@ -990,89 +1118,127 @@ public class VirtualMachine {
                     IP = popInteger();
             },
             () -> { // 8 -> ENTER
-                pushInteger(LP);
-                LP = SP;
-                SP = SP - read_x0();
-                IP = IP + 16;
+                if (consumeBudget(1, IP)) {
+                    pushInteger(LP);
+                    LP = SP;
+                    SP = SP - read_x0();
+                    IP = IP + 1;
+                }
             },
             () -> { // 9 -> LEAVE
                 SP = SP + read_x0();
                 LP = popInteger();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 10 -> ADD
                 add[read_p0()].exec();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 11 -> SUB
                 sub[read_p0()].exec();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 12 -> MUL
                 mul[read_p0()].exec();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 13 -> DIV
                 div[read_p0()].exec();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 14 -> MOD
                 mod[read_p0()].exec();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 15 -> AND
                 and[read_p0()].exec();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 16 -> OR
                 or[read_p0()].exec();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 17 -> XOR
                 xor[read_p0()].exec();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 18 -> SHL
                 shl[read_p0()].exec();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 19 -> SHR
                 shr[read_p0()].exec();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 20 -> NEG
                 neg[read_p0()].exec();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 21 -> NOT
                 not[read_p0()].exec();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 22 -> CMP
                 compare[read_p0()].exec();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 23 -> SIGN
                 sign[read_p0()].exec();
-                IP = IP + 16;
+                IP = IP + 1;
             },
             () -> { // 24 -> IF
                 boolean value = popBoolean();
                 boolean condition = read_p0() > 0;
                 if (value == condition)
-                    IP = read_x0();
+                    jump(read_x0());
                 else
-                    IP = IP + 16;
+                    IP = IP + 1;
             },
             () -> { // 25 -> JUMP
-                IP = read_x0();
+                jump(read_x0());
+            },
+            () -> { // 26 -> ADD_LOCAL_IMM
+                if (addLocalImmediate(read_p0(), LP + read_x0(), read_x1(), read_x2()))
+                    IP = IP + 1;
+                else
+                    stub.exec();
+            },
+            () -> { // 27 -> ADD_LOCALS
+                if (addLocals(read_p0(), LP + read_x0(), LP + read_x1(), LP + read_x2()))
+                    IP = IP + 1;
+                else
+                    stub.exec();
+            },
+            () -> { // 28 -> CMP_LOCAL_IMM_JUMP
+                int result = compareLocalWithImmediate(read_p0(), read_p1(), LP + read_x1(), read_x2());
+                if (result < 0)
+                    stub.exec();
+                else if ((result > 0) == (read_p2() > 0))
+                    jump(read_x0());
+                else
+                    IP = IP + 1;
+            },
+            () -> { // 29 -> CMP_IMM_JUMP
+                int result = compareImmediateWithStack(read_p0(), read_p1(), read_x1());
+                if (result < 0)
+                    stub.exec();
+                else if ((result > 0) == (read_p2() > 0))
+                    jump(read_x0());
+                else
+                    IP = IP + 1;
+            },
+            () -> { // 30 -> CALC
+                if (calculate(read_p0(), read_p1(), read_p2(), read_x0(), read_x1(), read_x2()))
+                    IP = IP + 1;
+                else
+                    stub.exec();
+            },
+            () -> { // 31 -> CONCAT
+                if (concatenate(read_x0(), read_x1(), read_x2()))
+                    IP = IP + 1;
+                else
+                    stub.exec();
             },
-            stub,
-            stub,
-            stub,
-            stub,
-            stub, // 30
-            stub,
             stub,
             stub,
             stub,
@@ -1172,4 +1338,876 @@ public class VirtualMachine {
                 power = false;
             }
     };
+
+    /*
+     * The switch-based engine. The main loop decodes an opcode by a switch statement, and each group
+     * of typed operations decodes its type selector by a nested switch in a small method,
+     * so the JIT compiler can inline them instead of performing megamorphic calls through the tables.
+     * Each method returns false if the instruction is malformed.
+     * The same methods are called by functions compiled in the tiered mode (see JitCompiler).
+     */
+
+    /**
+     * Runs the switch-based engine
+     * @param exitSP value of the stack pointer after return from the function that must stop the engine,
+     *               -1 if the engine runs the whole program
+     */
+    private void runSwitch(int exitSP) {
+        final ByteBuffer memory = this.memory;
+        final int[] opcodes = code.opcode;
+        final int[] x0 = code.x0;
+        final int[] x1 = code.x1;
+        while (power) {
+            final int ip = IP;
+            final byte p0 = (byte) code.p0[ip];
+            boolean valid = true;
+            switch (opcodes[ip]) {
+                case OpCode.NOP:
+                    IP = ip + 1;
+                    break;
+                case OpCode.LOAD: {
+                    int size = x0[ip];
+                    SP = SP - size;
+                    valid = execLoad(p0, size, x1[ip]);
+                    IP = ip + 1;
+                    break;
+                }
+                case OpCode.STORE: {
+                    int size = x0[ip];
+                    valid = execStore(p0, size, x1[ip]);
+                    SP = SP + size;
+                    IP = ip + 1;
+                    break;
+                }
+                case OpCode.CAST:
+                    valid = execCast(p0, (byte) code.p1[ip]);
+                    IP = ip + 1;
+                    break;
+                case OpCode.POP:
+                    SP = SP + x0[ip];
+                    IP = ip + 1;
+                    break;
+                case OpCode.DUP: {
+                    int size = x0[ip];
+                    SP = SP - size;
+                    move(SP + size, SP, size);
+                    IP = ip + 1;
+                    break;
+                }
+                case OpCode.CALL:
+                    pushInteger(ip + 1);
+                    if (p0 == FunctionSelector.USER_DEFINED)
+                        IP = x0[ip];
+                    else if (p0 == FunctionSelector.NATIVE)
+                        execNativeCall(x0[ip]);
+                    else
+                        valid = false;
+                    break;
+                case OpCode.RET:
+                    if (SP == memory.size())
+                        power = false;
+                    else {
+                        IP = popInteger();
+                        if (SP == exitSP)
+                            return;
+                    }
+                    break;
+                case OpCode.ENTER:
+                    if (jit != null && nesting < maxNesting) {
+                        CompiledFunction function = jit.onEnter(ip);
+                        if (function != null) {
+                            // the compiled function consumes the budget by its own ENTER
+                            runCompiled(function, ip);
+                            if (SP == exitSP)
+                                return;
+                            break;
+                        }
+                    }
+                    if (!consumeBudget(1, ip))
+                        break;
+                    pushInteger(LP);
+                    LP = SP;
+                    SP = SP - x0[ip];
+                    IP = ip + 1;
+                    break;
+                case OpCode.LEAVE:
+                    SP = SP + x0[ip];
+                    LP = popInteger();
+                    IP = ip + 1;
+                    break;
+                case OpCode.ADD:
+                    valid = execAdd(p0);
+                    IP = ip + 1;
+                    break;
+                case OpCode.SUB:
+                    valid = execSub(p0);
+                    IP = ip + 1;
+                    break;
+                case OpCode.MUL:
+                    valid = execMul(p0);
+                    IP = ip + 1;
+                    break;
+                case OpCode.DIV:
+                    valid = execDiv(p0);
+                    IP = ip + 1;
+                    break;
+                case OpCode.MOD:
+                    valid = execMod(p0);
+                    IP = ip + 1;
+                    break;
+                case OpCode.AND:
+                case OpCode.OR:
+                case OpCode.XOR:
+                case OpCode.SHL:
+                case OpCode.SHR:
+                    valid = execBitwise((byte) opcodes[ip], p0);
+                    IP = ip + 1;
+                    break;
+                case OpCode.NEG:
+                    valid = execNeg(p0);
+                    IP = ip + 1;
+                    break;
+                case OpCode.NOT:
+                    valid = execNot(p0);
+                    IP = ip + 1;
+                    break;
+                case OpCode.CMP:
+                    valid = execCompare(p0, (byte) code.p1[ip]);
+                    IP = ip + 1;
+                    break;
+                case OpCode.SIGN:
+                    valid = execSign(p0);
+                    IP = ip + 1;
+                    break;
+                case OpCode.IF:
+                    if (popBoolean() == p0 > 0)
+                        IP = x0[ip];
+                    else
+                        IP = ip + 1;
+                    if (IP <= ip && onBackEdge(ip, exitSP))
+                        return;
+                    break;
+                case OpCode.JUMP:
+                    IP = x0[ip];
+                    if (IP <= ip && onBackEdge(ip, exitSP))
+                        return;
+                    break;
+                case OpCode.ADD_LOCAL_IMM:
+                    valid = addLocalImmediate(p0, LP + x0[ip], x1[ip], code.x2[ip]);
+                    IP = ip + 1;
+                    break;
+                case OpCode.ADD_LOCALS:
+                    valid = addLocals(p0, LP + x0[ip], LP + x1[ip], LP + code.x2[ip]);
+                    IP = ip + 1;
+                    break;
+                case OpCode.CMP_LOCAL_IMM_JUMP: {
+                    int result = compareLocalWithImmediate(p0, (byte) code.p1[ip], LP + x1[ip], code.x2[ip]);
+                    valid = result >= 0;
+                    IP = (result > 0) == (code.p2[ip] > 0) ? x0[ip] : ip + 1;
+                    if (valid && IP <= ip && onBackEdge(ip, exitSP))
+                        return;
+                    break;
+                }
+                case OpCode.CMP_IMM_JUMP: {
+                    int result = compareImmediateWithStack(p0, (byte) code.p1[ip], x1[ip]);
+                    valid = result >= 0;
+                    IP = (result > 0) == (code.p2[ip] > 0) ? x0[ip] : ip + 1;
+                    if (valid && IP <= ip && onBackEdge(ip, exitSP))
+                        return;
+                    break;
+                }
+                case OpCode.CALC:
+                    valid = calculate(p0, (byte) code.p1[ip], (byte) code.p2[ip], x0[ip], x1[ip], code.x2[ip]);
+                    IP = ip + 1;
+                    break;
+                case OpCode.CONCAT:
+                    valid = concatenate(x0[ip], x1[ip], code.x2[ip]);
+                    IP = ip + 1;
+                    break;
+                case OpCode.END:
+                    power = false;
+                    break;
+                default:
+                    valid = false;
+            }
+            if (!valid) {
+                IP = ip;
+                power = false;
+                error = ErrorCode.BAD_INSTRUCTION;
+            }
+        }
+    }
+
+    /**
+     * Consumes the budget by a backward jump of the interpreter, then counts the jump
+     * and if the function is hot, continues it by compiled code
+     * @param ip index of the jump instruction, the target is already in the instruction pointer
+     * @param exitSP the stack pointer that stops the engine
+     * @return true if the engine must be stopped
+     */
+    private boolean onBackEdge(int ip, int exitSP) {
+        if (!consumeBudget(ip - IP + 1, IP))
+            return true;
+        if (jit == null || nesting >= maxNesting)
+            return false;
+        CompiledFunction function = jit.onBackEdge(IP);
+        if (function == null)
+            return false;
+        runCompiled(function, IP);
+        return SP == exitSP;
+    }
+
+    /**
+     * Calls a function from compiled code, the return address is already pushed to the stack.
+     * A function that is not compiled yet or is called too deep is executed by the interpreter
+     * @param entry index of the first instruction of the function
+     */
+    void callFunction(int entry) {
+        CompiledFunction function = nesting < maxNesting ? jit.getCompiledFunction(entry) : null;
+        IP = entry;
+        if (function != null)
+            runCompiled(function, entry);
+        else
+            runSwitch(SP + 4);
+    }
+
+    /**
+     * Runs compiled code. Each call from compiled code takes a frame of the JVM stack,
+     * so past 'maxNesting' compiled functions the interpreter executes calls without recursion
+     * @param function the compiled function
+     * @param start index of the instruction the execution starts from
+     */
+    private void runCompiled(CompiledFunction function, int start) {
+        nesting++;
+        function.run(this, start);
+        nesting--;
+    }
+
+    /**
+     * Consumes the budget, if it is exhausted, suspends the machine
+     * @param cost the number of instructions
+     * @param resume index of the instruction the execution resumes from
+     * @return true if the execution can be continued
+     */
+    boolean consumeBudget(int cost, int resume) {
+        budget -= cost;
+        if (budget >= 0)
+            return true;
+        IP = resume;
+        power = false;
+        suspended = true;
+        return false;
+    }
+
+    /**
+     * Jump of the table-based engine
+     * @param target index of the target instruction
+     */
+    private void jump(int target) {
+        int ip = IP;
+        IP = target;
+        if (target <= ip)
+            consumeBudget(ip - target + 1, target);
+    }
+
+    void execReturn() {
+        if (SP == memory.size())
+            power = false;
+        else
+            IP = popInteger();
+    }
+
+    void execEnter(int size) {
+        pushInteger(LP);
+        LP = SP;
+        SP = SP - size;
+    }
+
+    void execLeave(int size) {
+        SP = SP + size;
+        LP = popInteger();
+    }
+
+    void execDup(int size) {
+        SP = SP - size;
+        move(SP + size, SP, size);
+    }
+
+    void badInstruction(int ip) {
+        IP = ip;
+        power = false;
+        error = ErrorCode.BAD_INSTRUCTION;
+    }
+
+    boolean execLoad(byte selector, int size, int address) {
+        switch (selector) {
+            case DataSelector.GLOBAL:
+                move(address, SP, size);
+                return true;
+            case DataSelector.LOCAL:
+                move(LP + address, SP, size);
+                return true;
+            case DataSelector.IMMEDIATE:
+                loadImmediate(size, code.x1[IP], code.x2[IP]);
+                return true;
+            case DataSelector.LOCAL_POINTER:
+                memory.setInt(SP, LP + address);
+                return true;
+            case DataSelector.ZERO:
+                for (int k = 0; k < size; k++)
+                    memory.set(SP + k, (byte) 0);
+                return true;
+        }
+        return false;
+    }
+
+    boolean execStore(byte selector, int size, int address) {
+        switch (selector) {
+            case DataSelector.GLOBAL:
+                move(SP, address, size);
+                return true;
+            case DataSelector.LOCAL:
+                move(SP, LP + address, size);
+                return true;
+        }
+        return false;
+    }
+
+    void execNativeCall(int index) {
+        natives[index].exec(memory, SP);
+        IP = popInteger();
+    }
+
+    boolean execCast(byte from, byte to) {
+        switch (to) {
+            case TypeSelector.SHORT:
+                if (from != TypeSelector.INTEGER)
+                    return false;
+                castToShort[from].exec();
+                return true;
+            case TypeSelector.INTEGER:
+                if (from != TypeSelector.SHORT)
+                    return false;
+                pushInteger(popShort());
+                return true;
+            case TypeSelector.LONG:
+                if (from == TypeSelector.SHORT)
+                    pushLong(popShort());
+                else if (from == TypeSelector.INTEGER)
+                    pushLong(popInteger());
+                else
+                    return false;
+                return true;
+            case TypeSelector.STRING:
+                if (from < 0 || from >= castToString.length || castToString[from] == stub)
+                    return false;
+                castToString[from].exec();
+                return true;
+        }
+        return false;
+    }
+
+    boolean execAdd(byte type) {
+        switch (type) {
+            case TypeSelector.BYTE:
+                pushByte((byte) (popByte() + popByte()));
+                return true;
+            case TypeSelector.SHORT:
+                pushShort((short) (popShort() + popShort()));
+                return true;
+            case TypeSelector.INTEGER:
+                pushInteger(popInteger() + popInteger());
+                return true;
+            case TypeSelector.LONG:
+                pushLong(popLong() + popLong());
+                return true;
+            case TypeSelector.REAL:
+                popReal(real0);
+                popReal(real1);
+                FixedPoint.add(real0, real0, real1);
+                pushReal(real0);
+                return true;
+            case TypeSelector.STRING:
+                add[TypeSelector.STRING].exec();
+                return true;
+        }
+        return false;
+    }
+
+    boolean execSub(byte type) {
+        switch (type) {
+            case TypeSelector.BYTE: {
+                byte left = popByte();
+                pushByte((byte) (left - popByte()));
+                return true;
+            }
+            case TypeSelector.SHORT: {
+                short left = popShort();
+                pushShort((short) (left - popShort()));
+                return true;
+            }
+            case TypeSelector.INTEGER: {
+                int left = popInteger();
+                pushInteger(left - popInteger());
+                return true;
+            }
+            case TypeSelector.LONG: {
+                long left = popLong();
+                pushLong(left - popLong());
+                return true;
+            }
+            case TypeSelector.REAL:
+                popReal(real0);
+                popReal(real1);
+                FixedPoint.sub(real0, real0, real1);
+                pushReal(real0);
+                return true;
+        }
+        return false;
+    }
+
+    boolean execMul(byte type) {
+        switch (type) {
+            case TypeSelector.BYTE: {
+                byte left = popByte();
+                pushShort((short) (left * popByte()));
+                return true;
+            }
+            case TypeSelector.SHORT: {
+                short left = popShort();
+                pushInteger(left * popShort());
+                return true;
+            }
+            case TypeSelector.INTEGER: {
+                int left = popInteger();
+                pushInteger(left * popInteger());
+                return true;
+            }
+            case TypeSelector.LONG: {
+                long left = popLong();
+                pushLong(left * popLong());
+                return true;
+            }
+            case TypeSelector.REAL:
+                popReal(real0);
+                popReal(real1);
+                FixedPoint.mul(real0, real0, real1);
+                pushReal(real0);
+                return true;
+        }
+        return false;
+    }
+
+    boolean execDiv(byte type) {
+        switch (type) {
+            case TypeSelector.BYTE: {
+                byte left = popByte();
+                pushByte((byte) (left / popByte()));
+                return true;
+            }
+            case TypeSelector.SHORT: {
+                short left = popShort();
+                pushShort((short) (left / popShort()));
+                return true;
+            }
+            case TypeSelector.INTEGER: {
+                int left = popInteger();
+                pushInteger(left / popInteger());
+                return true;
+            }
+            case TypeSelector.LONG: {
+                long left = popLong();
+                pushLong(left / popLong());
+                return true;
+            }
+            case TypeSelector.REAL:
+                popReal(real0);
+                popReal(real1);
+                FixedPoint.div(real0, real0, real1);
+                pushReal(real0);
+                return true;
+        }
+        return false;
+    }
+
+    boolean execMod(byte type) {
+        switch (type) {
+            case TypeSelector.BYTE: {
+                byte left = popByte();
+                pushByte((byte) (left % popByte()));
+                return true;
+            }
+            case TypeSelector.SHORT: {
+                short left = popShort();
+                pushShort((short) (left % popShort()));
+                return true;
+            }
+            case TypeSelector.INTEGER: {
+                int left = popInteger();
+                pushInteger(left % popInteger());
+                return true;
+            }
+            case TypeSelector.LONG: {
+                long left = popLong();
+                pushLong(left % popLong());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long bitwise(byte opcode, long left, long right, int bits) {
+        switch (opcode) {
+            case OpCode.AND:
+                return left & right;
+            case OpCode.OR:
+                return left | right;
+            case OpCode.XOR:
+                return left ^ right;
+            case OpCode.SHL:
+                return left << (right & (bits - 1));
+            default: // SHR, unsigned shift within the width of the promoted type
+                return (left & (-1L >>> (64 - bits))) >>> (right & (bits - 1));
+        }
+    }
+
+    boolean execBitwise(byte opcode, byte type) {
+        switch (type) {
+            case TypeSelector.BYTE: {
+                byte left = popByte();
+                pushByte((byte) bitwise(opcode, left, popByte(), 32));
+                return true;
+            }
+            case TypeSelector.SHORT: {
+                short left = popShort();
+                pushShort((short) bitwise(opcode, left, popShort(), 32));
+                return true;
+            }
+            case TypeSelector.INTEGER: {
+                int left = popInteger();
+                pushInteger((int) bitwise(opcode, left, popInteger(), 32));
+                return true;
+            }
+            case TypeSelector.LONG: {
+                long left = popLong();
+                pushLong(bitwise(opcode, left, popLong(), 64));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean execNeg(byte type) {
+        switch (type) {
+            case TypeSelector.BYTE:
+                pushByte((byte) -popByte());
+                return true;
+            case TypeSelector.SHORT:
+                pushShort((short) -popShort());
+                return true;
+            case TypeSelector.INTEGER:
+                pushInteger(-popInteger());
+                return true;
+            case TypeSelector.LONG:
+                pushLong(-popLong());
+                return true;
+        }
+        return false;
+    }
+
+    boolean execNot(byte type) {
+        switch (type) {
+            case TypeSelector.BYTE:
+                pushByte((byte) ~popByte());
+                return true;
+            case TypeSelector.SHORT:
+                pushShort((short) ~popShort());
+                return true;
+            case TypeSelector.INTEGER:
+                pushInteger(~popInteger());
+                return true;
+            case TypeSelector.LONG:
+                pushLong(~popLong());
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean compare(byte comparator, int result) {
+        switch (comparator) {
+            case ComparatorSelector.EQUAL:
+                return result == 0;
+            case ComparatorSelector.DIFF:
+                return result != 0;
+            case ComparatorSelector.LESS:
+                return result < 0;
+            case ComparatorSelector.LESS_EQUAL:
+                return result <= 0;
+            case ComparatorSelector.GREATER:
+                return result > 0;
+            default: // GREATER_EQUAL
+                return result >= 0;
+        }
+    }
+
+    boolean execCompare(byte type, byte comparator) {
+        if (comparator < ComparatorSelector.EQUAL || comparator > ComparatorSelector.GREATER_EQUAL)
+            return false;
+        switch (type) {
+            case TypeSelector.BYTE: {
+                byte left = popByte();
+                pushBoolean(compare(comparator, Byte.compare(left, popByte())));
+                return true;
+            }
+            case TypeSelector.SHORT: {
+                short left = popShort();
+                pushBoolean(compare(comparator, Short.compare(left, popShort())));
+                return true;
+            }
+            case TypeSelector.INTEGER: {
+                int left = popInteger();
+                pushBoolean(compare(comparator, Integer.compare(left, popInteger())));
+                return true;
+            }
+            case TypeSelector.STRING:
+                pushBoolean(compare(comparator, compareTwoStringsFromStack()));
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * Superinstructions, the methods are shared by both engines.
+     */
+
+    /**
+     * Adds an immediate value to a variable
+     * @param type type selector
+     * @param address address of the variable
+     * @param low low 4 bytes of the value
+     * @param high high 4 bytes of the value
+     * @return false if the type is not supported
+     */
+    boolean addLocalImmediate(byte type, int address, int low, int high) {
+        switch (type) {
+            case TypeSelector.BYTE:
+                memory.set(address, (byte) (memory.get(address) + low));
+                return true;
+            case TypeSelector.SHORT:
+                memory.setShort(address, (short) (memory.getShort(address) + low));
+                return true;
+            case TypeSelector.INTEGER:
+                memory.setInt(address, memory.getInt(address) + low);
+                return true;
+            case TypeSelector.LONG:
+                memory.setLong(address, memory.getLong(address) + (((long) high << 32) | (low & 0xFFFFFFFFL)));
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds two variables and stores the result to a variable
+     * @param type type selector
+     * @param destination address of the result
+     * @param left address of the left operand
+     * @param right address of the right operand
+     * @return false if the type is not supported
+     */
+    boolean addLocals(byte type, int destination, int left, int right) {
+        switch (type) {
+            case TypeSelector.BYTE:
+                memory.set(destination, (byte) (memory.get(left) + memory.get(right)));
+                return true;
+            case TypeSelector.SHORT:
+                memory.setShort(destination, (short) (memory.getShort(left) + memory.getShort(right)));
+                return true;
+            case TypeSelector.INTEGER:
+                memory.setInt(destination, memory.getInt(left) + memory.getInt(right));
+                return true;
+            case TypeSelector.LONG:
+                memory.setLong(destination, memory.getLong(left) + memory.getLong(right));
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Compares a variable with an immediate value
+     * @param type type selector
+     * @param comparator comparator selector
+     * @param address address of the variable (left operand)
+     * @param value the value (right operand)
+     * @return 1 if the result of the comparison is true, 0 if false, -1 if the instruction is malformed
+     */
+    int compareLocalWithImmediate(byte type, byte comparator, int address, int value) {
+        if (comparator < ComparatorSelector.EQUAL || comparator > ComparatorSelector.GREATER_EQUAL)
+            return -1;
+        int left;
+        switch (type) {
+            case TypeSelector.BYTE:
+                left = memory.get(address);
+                break;
+            case TypeSelector.SHORT:
+                left = memory.getShort(address);
+                break;
+            case TypeSelector.INTEGER:
+                left = memory.getInt(address);
+                break;
+            default:
+                return -1;
+        }
+        return compare(comparator, Integer.compare(left, value)) ? 1 : 0;
+    }
+
+    /**
+     * Compares an immediate value with a value popped from the stack
+     * @param type type selector
+     * @param comparator comparator selector
+     * @param value the value (left operand)
+     * @return 1 if the result of the comparison is true, 0 if false, -1 if the instruction is malformed
+     */
+    int compareImmediateWithStack(byte type, byte comparator, int value) {
+        if (comparator < ComparatorSelector.EQUAL || comparator > ComparatorSelector.GREATER_EQUAL)
+            return -1;
+        int right;
+        switch (type) {
+            case TypeSelector.BYTE:
+                right = popByte();
+                break;
+            case TypeSelector.SHORT:
+                right = popShort();
+                break;
+            case TypeSelector.INTEGER:
+                right = popInteger();
+                break;
+            default:
+                return -1;
+        }
+        return compare(comparator, Integer.compare(value, right)) ? 1 : 0;
+    }
+
+    /**
+     * Calculates an arithmetic operation on local variables or immediate values
+     * and stores the result to a local variable
+     * @param type type selector
+     * @param operation opcode of the operation
+     * @param operands operand selector
+     * @param destination offset of the result relative to the local pointer
+     * @param left offset of the left operand relative to the local pointer or the immediate value
+     * @param right offset of the right operand relative to the local pointer or the immediate value
+     * @return false if the instruction is malformed
+     */
+    boolean calculate(byte type, byte operation, byte operands, int destination, int left, int right) {
+        if (operands < OperandSelector.LOCAL_LOCAL || operands > OperandSelector.IMMEDIATE_LOCAL)
+            return false;
+        boolean leftIsLocal = operands != OperandSelector.IMMEDIATE_LOCAL;
+        boolean rightIsLocal = operands != OperandSelector.LOCAL_IMMEDIATE;
+        long a;
+        long b;
+        switch (type) {
+            case TypeSelector.SHORT:
+                a = leftIsLocal ? memory.getShort(LP + left) : left;
+                b = rightIsLocal ? memory.getShort(LP + right) : right;
+                break;
+            case TypeSelector.INTEGER:
+                a = leftIsLocal ? memory.getInt(LP + left) : left;
+                b = rightIsLocal ? memory.getInt(LP + right) : right;
+                break;
+            case TypeSelector.LONG:
+                a = leftIsLocal ? memory.getLong(LP + left) : left;
+                b = rightIsLocal ? memory.getLong(LP + right) : right;
+                break;
+            default:
+                return false;
+        }
+        // the result is truncated to the type, so it is the same as the result of the stack operation
+        long result;
+        switch (operation) {
+            case OpCode.ADD:
+                result = a + b;
+                break;
+            case OpCode.SUB:
+                result = a - b;
+                break;
+            case OpCode.MUL:
+                result = a * b;
+                break;
+            case OpCode.DIV:
+                result = a / b;
+                break;
+            case OpCode.MOD:
+                result = a % b;
+                break;
+            default:
+                return false;
+        }
+        switch (type) {
+            case TypeSelector.SHORT:
+                memory.setShort(LP + destination, (short) result);
+                break;
+            case TypeSelector.INTEGER:
+                memory.setInt(LP + destination, (int) result);
+                break;
+            default:
+                memory.setLong(LP + destination, result);
+        }
+        return true;
+    }
+
+    /**
+     * Concatenates several strings from the stack and replaces them by the result.
+     * Characters are collected in an auxiliary buffer, so each of them is copied only twice
+     * regardless of the number of strings
+     * @param count number of strings, the first one is on the top of the stack
+     * @param sizes address of the table that contains sizes of the strings on the stack
+     * @param resultSize size of the result
+     * @return false if the instruction is malformed
+     */
+    boolean concatenate(int count, int sizes, int resultSize) {
+        if (count < 2 || resultSize < 8)
+            return false;
+        int capacity = (resultSize - 8) / 2;
+        if (chars == null || chars.length < capacity * 2)
+            chars = new byte[Math.max(capacity * 2, 256)];
+        int length = 0;
+        int address = SP;
+        for (int k = 0; k < count; k++) {
+            int part = Math.min(memory.getInt(address), capacity - length);
+            memory.copy(address + 8, chars, length * 2, part * 2);
+            length += part;
+            address += memory.getInt(sizes + k * 4);
+        }
+        SP = address - resultSize;
+        memory.setInt(SP, length);
+        memory.setInt(SP + 4, capacity);
+        memory.setArray(SP + 8, chars, 0, length * 2);
+        return true;
+    }
+
+    boolean execSign(byte type) {
+        long value;
+        switch (type) {
+            case TypeSelector.BYTE:
+                value = popByte();
+                break;
+            case TypeSelector.SHORT:
+                value = popShort();
+                break;
+            case TypeSelector.INTEGER:
+                value = popInteger();
+                break;
+            case TypeSelector.LONG:
+                value = popLong();
+                break;
+            case TypeSelector.REAL:
+                popReal(real0);
+                pushByte(real0.sign());
+                return true;
+            default:
+                return false;
+        }
+        pushByte((byte) Long.signum(value));
+        return true;
+    }
 }
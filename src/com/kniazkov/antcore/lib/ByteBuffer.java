@@ -16,14 +16,27 @@
  */
 package com.kniazkov.antcore.lib;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
 /**
- * The buffer of bytes
+ * The buffer of bytes.
+ * Multibyte values are stored in little-endian order and are accessed as whole words
+ * through array view handles instead of being assembled byte by byte
  */
 public class ByteBuffer extends ByteList {
     public ByteBuffer(int capacity) {
         data = new byte[capacity];
     }
 
+    /**
+     * Constructor for buffers that keep their data outside of the heap array
+     */
+    protected ByteBuffer() {
+        data = null;
+    }
+
     @Override
     public int size() {
         return data.length;
@@ -58,61 +71,48 @@ public class ByteBuffer extends ByteList {
 
     @Override
     public char getChar(int index) throws IndexOutOfBoundsException {
-        return (char)((data[index] & 0xFF) | ((data[index + 1] & 0xFF) << 8));
+        return (char) CHAR.get(data, index);
     }
 
     public void setChar(int index, char value) throws IndexOutOfBoundsException {
-        data[index++] = (byte)(value);
-        data[index] = (byte)(value >> 8);
+        CHAR.set(data, index, value);
     }
 
     @Override
     public short getShort(int index) throws IndexOutOfBoundsException {
-        return (short)((data[index] & 0xFF) | ((data[index + 1] & 0xFF) << 8));
+        return (short) SHORT.get(data, index);
     }
 
     public void setShort(int index, short value) throws IndexOutOfBoundsException {
-        data[index++] = (byte)(value);
-        data[index] = (byte)(value >> 8);
+        SHORT.set(data, index, value);
     }
 
     @Override
     public int getInt(int index) throws IndexOutOfBoundsException {
-        // it is a kind of magic
-        return (data[index] & 0xFF) | ((data[index + 1] & 0xFF) << 8) |
-                ((data[index + 2] & 0xFF) << 16) | ((data[index + 3] & 0xFF) << 24);
+        return (int) INT.get(data, index);
     }
 
     public void setInt(int index, int value) throws IndexOutOfBoundsException {
-        data[index++] = (byte)(value);
-        data[index++] = (byte)(value >> 8);
-        data[index++] = (byte)(value >> 16);
-        data[index]   = (byte)(value >> 24);
+        INT.set(data, index, value);
     }
 
     @Override
     public long getLong(int index) throws IndexOutOfBoundsException {
-        return ((long)data[index] & 0xFF) | ((long)(data[index + 1] & 0xFF) << 8) |
-                ((long)(data[index + 2] & 0xFF) << 16) | ((long)(data[index + 3] & 0xFF) << 24) |
-                ((long)(data[index + 4] & 0xFF) << 32) | ((long)(data[index + 5] & 0xFF) << 40) |
-                ((long)(data[index + 6] & 0xFF) << 48) | ((long)(data[index + 7] & 0xFF) << 56) ;
+        return (long) LONG.get(data, index);
     }
 
     public void setLong(int index, long value) throws IndexOutOfBoundsException {
-        data[index++] = (byte)(value);
-        data[index++] = (byte)(value >> 8);
-        data[index++] = (byte)(value >> 16);
-        data[index++] = (byte)(value >> 24);
-        data[index++] = (byte)(value >> 32);
-        data[index++] = (byte)(value >> 40);
-        data[index++] = (byte)(value >> 48);
-        data[index]   = (byte)(value >> 56);
+        LONG.set(data, index, value);
     }
 
     public void setByteList(int index, ByteList list) {
         list.copy(0, data, index, list.size());
     }
 
+    public void setByteList(int index, ByteList list, int fromIndex, int size) {
+        list.copy(fromIndex, data, index, size);
+    }
+
     public void setArray(int toIndex, byte[] source, int fromIndex, int size) {
         System.arraycopy(source, fromIndex, data, toIndex, size);
     }
@@ -121,5 +121,21 @@ public class ByteBuffer extends ByteList {
         System.arraycopy(data, fromIndex, data, toIndex, size);
     }
 
+    /**
+     * Releases the memory occupied by the buffer, the buffer can not be used after that
+     */
+    public void release() {
+        data = null;
+    }
+
     private byte[] data;
+
+    static final VarHandle CHAR =
+            MethodHandles.byteArrayViewVarHandle(char[].class, ByteOrder.LITTLE_ENDIAN);
+    static final VarHandle SHORT =
+            MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    static final VarHandle INT =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    static final VarHandle LONG =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
 }
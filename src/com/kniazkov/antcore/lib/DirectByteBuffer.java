@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.lib;
+
+import java.nio.ByteOrder;
+
+/**
+ * The buffer of bytes placed outside of the heap, so it does not increase the work of the garbage collector.
+ * It is used by long-lived machines, the memory of a released buffer is reclaimed by the cleaner of the buffer.
+ * Machines that are created and released often use PagedByteBuffer, which pools its pages
+ */
+public class DirectByteBuffer extends ByteBuffer {
+    private DirectByteBuffer(java.nio.ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.scratch = new byte[64];
+    }
+
+    /**
+     * Creates a buffer filled with zeros
+     * @param capacity capacity of the buffer
+     * @return a new buffer
+     */
+    public static DirectByteBuffer allocate(int capacity) {
+        return new DirectByteBuffer(java.nio.ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    @Override
+    public int size() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public byte[] toArray() {
+        byte[] array = new byte[buffer.capacity()];
+        buffer.get(0, array);
+        return array;
+    }
+
+    @Override
+    public int copy(int fromIndex, byte[] destination, int toIndex, int size) {
+        int capacity = buffer.capacity();
+        if (fromIndex >= capacity || toIndex >= destination.length)
+            return 0;
+        if (fromIndex + size > capacity)
+            size = capacity - fromIndex;
+        if (toIndex + size > destination.length)
+            size = destination.length - toIndex;
+        if (size >= 0)
+            buffer.get(fromIndex, destination, toIndex, size);
+        return size;
+    }
+
+    @Override
+    public byte get(int index) throws IndexOutOfBoundsException {
+        return buffer.get(index);
+    }
+
+    @Override
+    public void set(int index, byte value) throws IndexOutOfBoundsException {
+        buffer.put(index, value);
+    }
+
+    @Override
+    public char getChar(int index) throws IndexOutOfBoundsException {
+        return buffer.getChar(index);
+    }
+
+    @Override
+    public void setChar(int index, char value) throws IndexOutOfBoundsException {
+        buffer.putChar(index, value);
+    }
+
+    @Override
+    public short getShort(int index) throws IndexOutOfBoundsException {
+        return buffer.getShort(index);
+    }
+
+    @Override
+    public void setShort(int index, short value) throws IndexOutOfBoundsException {
+        buffer.putShort(index, value);
+    }
+
+    @Override
+    public int getInt(int index) throws IndexOutOfBoundsException {
+        return buffer.getInt(index);
+    }
+
+    @Override
+    public void setInt(int index, int value) throws IndexOutOfBoundsException {
+        buffer.putInt(index, value);
+    }
+
+    @Override
+    public long getLong(int index) throws IndexOutOfBoundsException {
+        return buffer.getLong(index);
+    }
+
+    @Override
+    public void setLong(int index, long value) throws IndexOutOfBoundsException {
+        buffer.putLong(index, value);
+    }
+
+    @Override
+    public void setByteList(int index, ByteList list) {
+        setByteList(index, list, 0, list.size());
+    }
+
+    @Override
+    public void setByteList(int index, ByteList list, int fromIndex, int size) {
+        byte[] array = getScratch(size);
+        size = list.copy(fromIndex, array, 0, size);
+        if (size > 0)
+            buffer.put(index, array, 0, size);
+    }
+
+    @Override
+    public void setArray(int toIndex, byte[] source, int fromIndex, int size) {
+        buffer.put(toIndex, source, fromIndex, size);
+    }
+
+    @Override
+    public void move(int fromIndex, int toIndex, int size) {
+        // areas may overlap, so the data is copied through an intermediate array
+        byte[] array = getScratch(size);
+        buffer.get(fromIndex, array, 0, size);
+        buffer.put(toIndex, array, 0, size);
+    }
+
+    @Override
+    public void release() {
+        buffer = null;
+    }
+
+    private byte[] getScratch(int size) {
+        if (scratch.length < size)
+            scratch = new byte[Math.max(size, scratch.length * 2)];
+        return scratch;
+    }
+
+    private java.nio.ByteBuffer buffer;
+    private byte[] scratch;
+}
@@ -53,6 +53,19 @@ public final class FixedPoint {
     }
 
     public String toString(int accuracy, boolean printZeros) {
+        StringBuilder buff = new StringBuilder();
+        appendTo(buff, accuracy, printZeros);
+        return buff.toString();
+    }
+
+    /**
+     * Appends the text representation of the number to a buffer
+     * @param buff the buffer
+     * @param accuracy number of digits after the decimal point
+     * @param printZeros print trailing zeros
+     */
+    public void appendTo(StringBuilder buff, int accuracy, boolean printZeros) {
+        int start = buff.length();
         long val = X;
         boolean neg = false;
         if (val < 0) {
@@ -81,7 +94,6 @@ public final class FixedPoint {
             intPart = (val / factor2);
             fractionPart = val - intPart * factor2;
         }
-        StringBuilder buff = new StringBuilder();
         boolean flag = false;
         for (int k = 0; k < accuracy; k++) {
              long dig = fractionPart % 10;
@@ -102,8 +114,15 @@ public final class FixedPoint {
         } while(intPart != 0);
         if (neg)
             buff.append('-');
-        buff.reverse();
-        return buff.toString();
+        for (int left = start, right = buff.length() - 1; left < right; left++, right--) {
+            char ch = buff.charAt(left);
+            buff.setCharAt(left, buff.charAt(right));
+            buff.setCharAt(right, ch);
+        }
+    }
+
+    public void appendTo(StringBuilder buff) {
+        appendTo(buff, precision, false);
     }
 
     @Override
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.lib;
+
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * The buffer of bytes divided into pages that are allocated on first write.
+ * A page that was never written contains zeros, so a buffer of any capacity costs nothing until it is used,
+ * and the memory of the virtual machine grows with the static data from the bottom and with the stack from the top.
+ * Several buffers can share pages of an image, such a page is copied when a buffer writes to it first time.
+ * Pages are placed outside of the heap, so they do not increase the work of the garbage collector.
+ * Pages of a released buffer return to the pool that retains at most 'maxPoolPages' pages,
+ * the memory of other pages is reclaimed by their cleaners
+ */
+public class PagedByteBuffer extends ByteBuffer {
+    public PagedByteBuffer(int capacity) {
+        this.capacity = capacity;
+        pages = new java.nio.ByteBuffer[(capacity + pageSize - 1) >> pageBits];
+        shared = new boolean[pages.length];
+    }
+
+    /**
+     * Creates a buffer that shares all pages of the image, the image must not be changed after that
+     * @param image the image
+     */
+    public PagedByteBuffer(PagedByteBuffer image) {
+        capacity = image.capacity;
+        pages = image.pages.clone();
+        shared = new boolean[pages.length];
+        for (int number = 0; number < pages.length; number++)
+            shared[number] = pages[number] != null;
+    }
+
+    /**
+     * @return number of bytes in pages that belong to this buffer only
+     */
+    public int getCommittedSize() {
+        int count = 0;
+        for (int number = 0; number < pages.length; number++) {
+            if (pages[number] != null && !shared[number])
+                count++;
+        }
+        return count << pageBits;
+    }
+
+    @Override
+    public int size() {
+        return capacity;
+    }
+
+    @Override
+    public byte[] toArray() {
+        byte[] array = new byte[capacity];
+        copy(0, array, 0, capacity);
+        return array;
+    }
+
+    @Override
+    public int copy(int fromIndex, byte[] destination, int toIndex, int size) {
+        if (fromIndex >= capacity || toIndex >= destination.length)
+            return 0;
+        if (fromIndex + size > capacity)
+            size = capacity - fromIndex;
+        if (toIndex + size > destination.length)
+            size = destination.length - toIndex;
+        int count = 0;
+        while (count < size) {
+            int index = fromIndex + count;
+            int offset = index & pageMask;
+            int chunk = Math.min(size - count, pageSize - offset);
+            java.nio.ByteBuffer page = pages[index >> pageBits];
+            if (page != null)
+                page.get(offset, destination, toIndex + count, chunk);
+            else
+                Arrays.fill(destination, toIndex + count, toIndex + count + chunk, (byte) 0);
+            count += chunk;
+        }
+        return size;
+    }
+
+    @Override
+    public byte get(int index) throws IndexOutOfBoundsException {
+        checkIndex(index, 1);
+        java.nio.ByteBuffer page = pages[index >> pageBits];
+        return page != null ? page.get(index & pageMask) : 0;
+    }
+
+    @Override
+    public void set(int index, byte value) throws IndexOutOfBoundsException {
+        checkIndex(index, 1);
+        java.nio.ByteBuffer page = getPageForWrite(index, value != 0);
+        if (page != null)
+            page.put(index & pageMask, value);
+    }
+
+    @Override
+    public char getChar(int index) throws IndexOutOfBoundsException {
+        return (char) getShort(index);
+    }
+
+    @Override
+    public void setChar(int index, char value) throws IndexOutOfBoundsException {
+        setShort(index, (short) value);
+    }
+
+    @Override
+    public short getShort(int index) throws IndexOutOfBoundsException {
+        checkIndex(index, 2);
+        int offset = index & pageMask;
+        if (offset <= pageSize - 2) {
+            java.nio.ByteBuffer page = pages[index >> pageBits];
+            return page != null ? page.getShort(offset) : 0;
+        }
+        return (short) getBytes(index, 2);
+    }
+
+    @Override
+    public void setShort(int index, short value) throws IndexOutOfBoundsException {
+        checkIndex(index, 2);
+        int offset = index & pageMask;
+        if (offset <= pageSize - 2) {
+            java.nio.ByteBuffer page = getPageForWrite(index, value != 0);
+            if (page != null)
+                page.putShort(offset, value);
+        }
+        else
+            setBytes(index, 2, value);
+    }
+
+    @Override
+    public int getInt(int index) throws IndexOutOfBoundsException {
+        checkIndex(index, 4);
+        int offset = index & pageMask;
+        if (offset <= pageSize - 4) {
+            java.nio.ByteBuffer page = pages[index >> pageBits];
+            return page != null ? page.getInt(offset) : 0;
+        }
+        return (int) getBytes(index, 4);
+    }
+
+    @Override
+    public void setInt(int index, int value) throws IndexOutOfBoundsException {
+        checkIndex(index, 4);
+        int offset = index & pageMask;
+        if (offset <= pageSize - 4) {
+            java.nio.ByteBuffer page = getPageForWrite(index, value != 0);
+            if (page != null)
+                page.putInt(offset, value);
+        }
+        else
+            setBytes(index, 4, value);
+    }
+
+    @Override
+    public long getLong(int index) throws IndexOutOfBoundsException {
+        checkIndex(index, 8);
+        int offset = index & pageMask;
+        if (offset <= pageSize - 8) {
+            java.nio.ByteBuffer page = pages[index >> pageBits];
+            return page != null ? page.getLong(offset) : 0;
+        }
+        return getBytes(index, 8);
+    }
+
+    @Override
+    public void setLong(int index, long value) throws IndexOutOfBoundsException {
+        checkIndex(index, 8);
+        int offset = index & pageMask;
+        if (offset <= pageSize - 8) {
+            java.nio.ByteBuffer page = getPageForWrite(index, value != 0);
+            if (page != null)
+                page.putLong(offset, value);
+        }
+        else
+            setBytes(index, 8, value);
+    }
+
+    @Override
+    public void setByteList(int index, ByteList list) {
+        setByteList(index, list, 0, list.size());
+    }
+
+    @Override
+    public void setByteList(int index, ByteList list, int fromIndex, int size) {
+        checkIndex(index, size);
+        // it is used to load static data only, so the intermediate array is not cached
+        byte[] array = new byte[Math.min(size, pageSize)];
+        int count = 0;
+        while (count < size) {
+            int offset = (index + count) & pageMask;
+            int chunk = Math.min(size - count, pageSize - offset);
+            java.nio.ByteBuffer page = getPageForWrite(index + count, true);
+            list.copy(fromIndex + count, array, 0, chunk);
+            page.put(offset, array, 0, chunk);
+            count += chunk;
+        }
+    }
+
+    @Override
+    public void setArray(int toIndex, byte[] source, int fromIndex, int size) {
+        checkIndex(toIndex, size);
+        int count = 0;
+        while (count < size) {
+            int offset = (toIndex + count) & pageMask;
+            int chunk = Math.min(size - count, pageSize - offset);
+            java.nio.ByteBuffer page = getPageForWrite(toIndex + count, true);
+            page.put(offset, source, fromIndex + count, chunk);
+            count += chunk;
+        }
+    }
+
+    @Override
+    public void move(int fromIndex, int toIndex, int size) {
+        checkIndex(fromIndex, size);
+        checkIndex(toIndex, size);
+        int fromOffset = fromIndex & pageMask;
+        int toOffset = toIndex & pageMask;
+        if (fromOffset + size <= pageSize && toOffset + size <= pageSize) {
+            java.nio.ByteBuffer source = pages[fromIndex >> pageBits];
+            if (source != null)
+                getPageForWrite(toIndex, true).put(toOffset, source, fromOffset, size);
+            else {
+                java.nio.ByteBuffer destination = getPageForWrite(toIndex, false);
+                if (destination != null)
+                    destination.put(toOffset, zeros, 0, size);
+            }
+            return;
+        }
+        if (toIndex < fromIndex) {
+            for (int k = 0; k < size; k++)
+                set(toIndex + k, get(fromIndex + k));
+        }
+        else {
+            for (int k = size - 1; k >= 0; k--)
+                set(toIndex + k, get(fromIndex + k));
+        }
+    }
+
+    @Override
+    public void release() {
+        for (int number = 0; number < pages.length; number++) {
+            if (pages[number] != null && !shared[number])
+                freePage(pages[number]);
+        }
+        Arrays.fill(pages, null);
+        Arrays.fill(shared, false);
+    }
+
+    private void checkIndex(int index, int size) throws IndexOutOfBoundsException {
+        if (index < 0 || size < 0 || index > capacity - size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + capacity);
+    }
+
+    /**
+     * @param index an index inside the page
+     * @param force true if the page must be allocated if absent
+     * @return the page owned by this buffer or null if the page is absent and was not allocated
+     */
+    private java.nio.ByteBuffer getPageForWrite(int index, boolean force) {
+        int number = index >> pageBits;
+        java.nio.ByteBuffer page = pages[number];
+        if (page == null) {
+            if (force) {
+                page = allocatePage();
+                pages[number] = page;
+            }
+        }
+        else if (shared[number]) {
+            java.nio.ByteBuffer copy = allocatePage();
+            copy.put(0, page, 0, pageSize);
+            page = copy;
+            pages[number] = page;
+            shared[number] = false;
+        }
+        return page;
+    }
+
+    private long getBytes(int index, int size) {
+        long value = 0;
+        for (int k = 0; k < size; k++)
+            value |= (long)(get(index + k) & 0xFF) << (k * 8);
+        return value;
+    }
+
+    private void setBytes(int index, int size, long value) {
+        for (int k = 0; k < size; k++)
+            set(index + k, (byte)(value >> (k * 8)));
+    }
+
+    /**
+     * @return a page filled with zeros, takes it from the pool if possible
+     */
+    private static java.nio.ByteBuffer allocatePage() {
+        java.nio.ByteBuffer page;
+        synchronized (pool) {
+            page = pool.poll();
+        }
+        if (page == null)
+            return java.nio.ByteBuffer.allocateDirect(pageSize).order(ByteOrder.LITTLE_ENDIAN);
+        page.put(0, zeros);
+        return page;
+    }
+
+    private static void freePage(java.nio.ByteBuffer page) {
+        synchronized (pool) {
+            if (pool.size() < maxPoolPages)
+                pool.push(page);
+        }
+    }
+
+    private final int capacity;
+    private final java.nio.ByteBuffer[] pages;
+    private final boolean[] shared;
+
+    private static final int pageBits = 12;
+    private static final int pageSize = 1 << pageBits;
+    private static final int pageMask = pageSize - 1;
+    private static final int maxPoolPages = 8192;
+    private static final byte[] zeros = new byte[pageSize];
+    private static final ArrayDeque<java.nio.ByteBuffer> pool = new ArrayDeque<>();
+}
@@ -5,6 +5,8 @@ import com.kniazkov.antcore.basic.bytecode.FullAddress;
 import com.kniazkov.antcore.basic.bytecode.ShortAddress;
 import com.kniazkov.antcore.basic.virtualmachine.VirtualMachine;
 
+import java.util.Arrays;
+
 /**
  * A channel that connected VM memory with other module
  */
@@ -12,7 +14,8 @@ public class Channel {
     public Channel(Runtime runtime, VirtualMachine vm, Binding binding) {
         machine = vm;
         size = binding.getSize();
-        buffer = new byte[size];
+        sent = new byte[size];
+        received = new byte[size];
         FullAddress source = binding.getSource();
         srcExecutor = runtime.getExecutorByName(source.getExecutor());
         srcAddress = source;
@@ -20,18 +23,32 @@ public class Channel {
     }
 
     /**
-     * Transmit data
+     * Transmit data, only bytes that were changed since the previous transmission are written.
+     * The receiver can write to its input data, then the whole region is written again
      */
     public void transmit() {
-        if (srcExecutor.read(srcAddress, size, buffer)) {
-            machine.write(dstOffset, size, buffer);
+        DataRegion region = srcExecutor.getRegion(srcAddress, size);
+        if (region == null)
+            return;
+        if (region != this.region) {
+            this.region = region;
+            version = 0;
+        }
+        else if (version > 0) {
+            machine.read(dstOffset, size, received);
+            if (!Arrays.equals(received, sent))
+                version = 0;
         }
+        version = region.transmit(version, machine, dstOffset, sent);
     }
 
     private VirtualMachine machine;
     private int size;
-    private byte[] buffer;
     private Executor srcExecutor;
     private ShortAddress srcAddress;
     private int dstOffset;
+    private DataRegion region;
+    private long version;
+    private byte[] sent;        // the data the receiver must have if it did not change it
+    private byte[] received;
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.runtime;
+
+import com.kniazkov.antcore.basic.virtualmachine.VirtualMachine;
+
+import java.util.Arrays;
+
+/**
+ * A region of memory of a module that other modules read through channels, i.e. an OUTPUT data set.
+ * The region keeps a copy of the data that is refreshed by the owner of the memory when its program is completed.
+ * Each refresh that finds changes increments the version and remembers the span of changed bytes,
+ * so a channel skips a region that was not changed and copies only the changed span of a region that was.
+ * Only the owner reads its memory, so a new region is empty until the first refresh
+ */
+public class DataRegion {
+    public DataRegion(int address, int size) {
+        this.address = address;
+        this.size = size;
+        data = new byte[size];
+        scratch = new byte[size];
+        version = 0;
+    }
+
+    /**
+     * Compares the copy with the memory, is called by the owner of the memory
+     * @param vm the virtual machine that owns the memory
+     */
+    public synchronized void update(VirtualMachine vm) {
+        vm.read(address, size, scratch);
+        int from = 0;
+        int to = size;
+        if (version > 0) {
+            from = Arrays.mismatch(data, scratch);
+            if (from < 0)
+                return;
+            while (data[to - 1] == scratch[to - 1])
+                to--;
+        }
+        byte[] previous = data;
+        data = scratch;
+        scratch = previous;
+        changedFrom = from;
+        changedTo = to;
+        version++;
+    }
+
+    /**
+     * Writes the data that a destination does not have yet
+     * @param known the version the destination already has, 0 if the destination has nothing
+     * @param vm the destination virtual machine
+     * @param offset the address of the data in the memory of the destination
+     * @param copy the copy of the data the destination has, is updated together with the destination
+     * @return the version the destination has now
+     */
+    public synchronized long transmit(long known, VirtualMachine vm, int offset, byte[] copy) {
+        if (known == version)
+            return known;
+        int from = 0;
+        int to = size;
+        if (known == version - 1) {
+            from = changedFrom;
+            to = changedTo;
+        }
+        vm.write(offset + from, data, from, to - from);
+        System.arraycopy(data, from, copy, from, to - from);
+        return version;
+    }
+
+    private final int address;
+    private final int size;
+    private byte[] data;
+    private byte[] scratch;
+    private long version;
+    private int changedFrom;
+    private int changedTo;
+}
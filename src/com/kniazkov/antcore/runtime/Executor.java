@@ -19,12 +19,11 @@ package com.kniazkov.antcore.runtime;
 import com.kniazkov.antcore.basic.bytecode.Binding;
 import com.kniazkov.antcore.basic.bytecode.CompiledModule;
 import com.kniazkov.antcore.basic.bytecode.ShortAddress;
-import com.kniazkov.antcore.lib.Periodic;
 
 /**
  * The class that contains data of executing modules
  */
-public abstract class Executor extends Periodic {
+public abstract class Executor {
     public Executor(Runtime runtime) {
         this.runtime = runtime;
     }
@@ -47,13 +46,12 @@ public abstract class Executor extends Periodic {
     public abstract void setBindingByModule(Binding[] bindingByModule);
 
     /**
-     * Reads data from module to buffer by full absolute address
+     * Returns a region of memory of a module, channels read data of the module from it
      * @param address short absolute address
      * @param size size of the data
-     * @param buffer destination buffer
-     * @return true if the operation was successful
+     * @return the region or null if the data can not be read
      */
-    public abstract boolean read(ShortAddress address, int size, byte[] buffer);
+    public abstract DataRegion getRegion(ShortAddress address, int size);
 
     /**
      * Initializer
@@ -65,12 +63,54 @@ public abstract class Executor extends Periodic {
      */
     protected abstract int getFrequency();
 
+    /**
+     * Method that is executed periodically
+     * @return if false, the periodic execution is stopped
+     */
+    protected abstract boolean tick();
+
+    /**
+     * @return what to do if the 'tick' method takes longer than its period
+     */
+    protected OverrunPolicy getOverrunPolicy() {
+        return OverrunPolicy.SKIP;
+    }
+
+    /**
+     * @return a snapshot of timing statistics of ticks or null if the executor is not started
+     */
+    public Statistics getStatistics() {
+        Scheduler.PeriodicTask task = this.task;
+        return task != null ? task.getStatistics() : null;
+    }
+
     /**
      * Runs the executor
      */
     public void run() {
         init();
-        start(1000 / getFrequency());
+        stop();
+        task = runtime.getScheduler().schedule(() -> {
+            ticks++;
+            return tick();
+        }, 1000 / getFrequency(), getOverrunPolicy());
+    }
+
+    /**
+     * Stops the periodic execution
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * @return a count of cases of executions
+     */
+    public long getTicks() {
+        return ticks;
     }
 
     public Runtime getRuntime() {
@@ -78,4 +118,6 @@ public abstract class Executor extends Periodic {
     }
 
     private Runtime runtime;
+    private volatile Scheduler.PeriodicTask task;
+    private volatile long ticks;
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.runtime;
+
+/**
+ * Options of the launcher
+ */
+public class LaunchOptions {
+    /**
+     * @return true if programs of web pages are executed by threads of sessions
+     */
+    public boolean isAsynchronousWebSessions() {
+        return asynchronousWebSessions;
+    }
+
+    /**
+     * Enables or disables asynchronous web sessions, in this mode a request of a web page only puts
+     * the events into the mailbox of the page, the program of the page is executed later by threads of sessions
+     * and the result is returned by the next request
+     * @param asynchronousWebSessions true to enable asynchronous web sessions
+     */
+    public void setAsynchronousWebSessions(boolean asynchronousWebSessions) {
+        this.asynchronousWebSessions = asynchronousWebSessions;
+    }
+
+    private boolean asynchronousWebSessions = false;
+}
@@ -29,26 +29,41 @@ public class Launcher {
      * @param program the program
      */
     public static void launch(CompiledProgram program) {
+        launch(program, new LaunchOptions());
+    }
+
+    /**
+     * Launch a compiled program
+     * @param program the program
+     * @param options options of the launcher
+     */
+    public static void launch(CompiledProgram program, LaunchOptions options) {
         Runtime runtime = new Runtime();
         for (String executorName : program.getExecutors()) {
-            Executor executor = createExecutor(executorName, runtime);
+            Executor executor = createExecutor(executorName, runtime, options);
             if (executor == null) {
                 //TODO: throw an exception
                 System.err.println("Can't create executor: '" + executorName + '\'');
                 return;
             }
             executor.setModuleList(program.getModulesByExecutor(executorName));
-            executor.setBindingByModule(program.getBindingByDestination(executorName));
             runtime.addExecutor(executor);
         }
+        // channels look up executors of sources, so bindings are set when all executors are created
+        for (String executorName : program.getExecutors()) {
+            runtime.getExecutorByName(executorName).setBindingByModule(program.getBindingByDestination(executorName));
+        }
 
         runtime.run();
     }
 
-    private static Executor createExecutor(String name, Runtime runtime) {
+    private static Executor createExecutor(String name, Runtime runtime, LaunchOptions options) {
         switch (name) {
-            case "WEB":
-                return new WebExecutor(runtime);
+            case "WEB": {
+                WebExecutor executor = new WebExecutor(runtime);
+                executor.setAsynchronousSessions(options.isAsynchronousWebSessions());
+                return executor;
+            }
             case "SERVER":
                 return new ServerExecutor(runtime);
         }
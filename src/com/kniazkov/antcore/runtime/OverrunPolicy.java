@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.runtime;
+
+/**
+ * What a periodic task does when a frame takes longer than its period
+ */
+public enum OverrunPolicy {
+    /**
+     * Missed frames are skipped, the next frame starts at the next point of the schedule
+     */
+    SKIP,
+
+    /**
+     * Missed frames are performed one after another without a pause until the task returns to the schedule,
+     * the delay that can be caught up is limited, frames beyond it are skipped
+     */
+    CATCH_UP,
+
+    /**
+     * The period grows after each overrun and returns to the nominal one while frames are short,
+     * i.e. the frequency decreases under load
+     */
+    ADAPT
+}
@@ -17,6 +17,7 @@
 package com.kniazkov.antcore.runtime;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -28,6 +29,7 @@ public class Runtime {
     public Runtime() {
         executorList = new ArrayList<>();
         executorMap = new TreeMap<>();
+        scheduler = new Scheduler();
     }
 
     public void addExecutor(Executor executor) {
@@ -45,6 +47,21 @@ public class Runtime {
         return executorMap.get(name);
     }
 
+    /**
+     * @return all executors
+     */
+    public List<Executor> getExecutors() {
+        return Collections.unmodifiableList(executorList);
+    }
+
+    /**
+     * @return the scheduler that performs executors
+     */
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
     private List<Executor> executorList;
     private Map<String, Executor> executorMap;
+    private Scheduler scheduler;
 }
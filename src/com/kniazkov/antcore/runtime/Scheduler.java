@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * The scheduler shared by all executors of a runtime.
+ * One timer thread starts frames of executors, the frames are performed by a work-stealing pool
+ * that has a thread per core, so independent ants run in parallel
+ */
+public class Scheduler {
+    public Scheduler() {
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "Antcore timer"));
+        pool = new ForkJoinPool();
+    }
+
+    /**
+     * A task started periodically, each frame is performed by the pool.
+     * Frames of the same task never overlap: the next frame is planned when the previous one is completed,
+     * and if it is already late, the overrun is resolved by the policy of the task
+     */
+    public class PeriodicTask {
+        private PeriodicTask(BooleanSupplier frame, long period, OverrunPolicy policy) {
+            this.frame = frame;
+            this.policy = policy;
+            nominalPeriod = TimeUnit.MILLISECONDS.toNanos(period);
+            this.period = nominalPeriod;
+        }
+
+        private void start() {
+            if (!cancelled)
+                pool.execute(this::perform);
+        }
+
+        private void perform() {
+            long startTime = System.nanoTime();
+            boolean proceed = false;
+            try {
+                proceed = frame.getAsBoolean();
+            } finally {
+                long endTime = System.nanoTime();
+                synchronized (this) {
+                    frames++;
+                    lastDuration = endTime - startTime;
+                    maxDuration = Math.max(maxDuration, lastDuration);
+                    totalDuration += lastDuration;
+                    lastLateness = Math.max(0, startTime - plannedTime);
+                    maxLateness = Math.max(maxLateness, lastLateness);
+                }
+                if (!proceed)
+                    cancelled = true;
+                else
+                    plan(endTime);
+            }
+        }
+
+        /**
+         * Plans the next frame
+         * @param now the current time
+         */
+        private synchronized void plan(long now) {
+            if (cancelled)
+                return;
+            long next = plannedTime + period;
+            if (next < now) {
+                overruns++;
+                switch (policy) {
+                    case SKIP: {
+                        long missed = (now - next + period - 1) / period;
+                        skippedFrames += missed;
+                        next += missed * period;
+                        break;
+                    }
+                    case CATCH_UP: {
+                        long limit = now - maxCatchUpPeriods * period;
+                        if (next < limit) {
+                            long missed = (limit - next + period - 1) / period;
+                            skippedFrames += missed;
+                            next += missed * period;
+                        }
+                        break;
+                    }
+                    case ADAPT:
+                        period = Math.min(period * 2, nominalPeriod * maxSlowdown);
+                        next = now;
+                        break;
+                }
+            }
+            else if (policy == OverrunPolicy.ADAPT && period > nominalPeriod && lastDuration < period / 2) {
+                period = Math.max(nominalPeriod, period - period / 4);
+            }
+            plannedTime = next;
+            future = timer.schedule(this::start, Math.max(0, next - now), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Stops the periodic execution, the frame that is running now is completed
+         */
+        public synchronized void cancel() {
+            cancelled = true;
+            if (future != null)
+                future.cancel(false);
+        }
+
+        /**
+         * @return a snapshot of timing statistics of the task
+         */
+        public synchronized Statistics getStatistics() {
+            return new Statistics(frames, lastDuration, maxDuration, frames > 0 ? totalDuration / frames : 0,
+                    lastLateness, maxLateness, overruns, skippedFrames, period);
+        }
+
+        private final BooleanSupplier frame;
+        private final OverrunPolicy policy;
+        private final long nominalPeriod;
+        private long period;
+        private long plannedTime;
+        private ScheduledFuture<?> future;
+        private volatile boolean cancelled;
+
+        private long frames;
+        private long lastDuration;
+        private long maxDuration;
+        private long totalDuration;
+        private long lastLateness;
+        private long maxLateness;
+        private long overruns;
+        private long skippedFrames;
+    }
+
+    /**
+     * Starts the periodic execution
+     * @param frame the frame, if it returns false, the periodic execution is stopped
+     * @param period the period, in milliseconds
+     * @param policy what to do if a frame takes longer than the period
+     * @return the task
+     */
+    public PeriodicTask schedule(BooleanSupplier frame, long period, OverrunPolicy policy) {
+        PeriodicTask task = new PeriodicTask(frame, period, policy);
+        synchronized (task) {
+            task.plannedTime = System.nanoTime();
+            task.future = timer.schedule(task::start, 0, TimeUnit.NANOSECONDS);
+        }
+        return task;
+    }
+
+    /**
+     * Performs an action for each item in parallel and waits until all the actions are completed
+     * @param items the items
+     * @param action the action
+     * @param <T> type of items
+     */
+    public <T> void forEach(T[] items, Consumer<T> action) {
+        if (items.length < 2) {
+            for (T item : items)
+                action.accept(item);
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(items.length);
+        for (T item : items)
+            tasks.add(ForkJoinTask.adapt(() -> action.accept(item)));
+        if (ForkJoinTask.getPool() == pool) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+    }
+
+    /**
+     * How many periods a task in the catch-up mode can be behind the schedule
+     */
+    private static final long maxCatchUpPeriods = 10;
+
+    /**
+     * How many times the period of a task in the adaptive mode can grow
+     */
+    private static final long maxSlowdown = 16;
+
+    private ScheduledExecutorService timer;
+    private ForkJoinPool pool;
+}
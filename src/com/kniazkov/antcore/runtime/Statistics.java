@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.runtime;
+
+/**
+ * Timing statistics of a periodic task at some moment, the snapshot does not change
+ */
+public final class Statistics {
+    Statistics(long frames, long lastDuration, long maxDuration, long averageDuration, long lastLateness,
+               long maxLateness, long overruns, long skippedFrames, long period) {
+        this.frames = frames;
+        this.lastDuration = lastDuration;
+        this.maxDuration = maxDuration;
+        this.averageDuration = averageDuration;
+        this.lastLateness = lastLateness;
+        this.maxLateness = maxLateness;
+        this.overruns = overruns;
+        this.skippedFrames = skippedFrames;
+        this.period = period;
+    }
+
+    /**
+     * @return number of performed frames
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return duration of the last frame, in nanoseconds
+     */
+    public long getLastDuration() {
+        return lastDuration;
+    }
+
+    /**
+     * @return maximal duration of a frame, in nanoseconds
+     */
+    public long getMaxDuration() {
+        return maxDuration;
+    }
+
+    /**
+     * @return average duration of a frame, in nanoseconds
+     */
+    public long getAverageDuration() {
+        return averageDuration;
+    }
+
+    /**
+     * @return how late the last frame was started relative to the schedule, in nanoseconds
+     */
+    public long getLastLateness() {
+        return lastLateness;
+    }
+
+    /**
+     * @return maximal lateness of a frame, in nanoseconds
+     */
+    public long getMaxLateness() {
+        return maxLateness;
+    }
+
+    /**
+     * @return number of frames that were completed after the start time of the next frame
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * @return number of frames that were skipped because of overruns
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * @return the period, in nanoseconds, it differs from the nominal one in the adaptive mode only
+     */
+    public long getPeriod() {
+        return period;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("frames: %d, duration: %.2f ms (max %.2f ms), lateness: %.2f ms (max %.2f ms), "
+                        + "overruns: %d, skipped: %d, frequency: %.1f Hz",
+                frames, averageDuration / 1e6, maxDuration / 1e6, lastLateness / 1e6, maxLateness / 1e6,
+                overruns, skippedFrames, 1e9 / period);
+    }
+
+    private final long frames;
+    private final long lastDuration;
+    private final long maxDuration;
+    private final long averageDuration;
+    private final long lastLateness;
+    private final long maxLateness;
+    private final long overruns;
+    private final long skippedFrames;
+    private final long period;
+}
@@ -17,13 +17,19 @@
 package com.kniazkov.antcore.runtime.server;
 
 import com.kniazkov.antcore.basic.bytecode.Binding;
+import com.kniazkov.antcore.basic.virtualmachine.DecodedCode;
+import com.kniazkov.antcore.basic.virtualmachine.ExecutionMode;
 import com.kniazkov.antcore.basic.virtualmachine.StandardLibrary;
 import com.kniazkov.antcore.basic.virtualmachine.VirtualMachine;
 import com.kniazkov.antcore.lib.ByteList;
+import com.kniazkov.antcore.lib.DirectByteBuffer;
 import com.kniazkov.antcore.runtime.Channel;
+import com.kniazkov.antcore.runtime.DataRegion;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An ant, i.e. minimal execution unit that contains own memory space
@@ -31,28 +37,47 @@ import java.util.List;
 public class Ant {
     public Ant(ServerExecutor executor, ByteList code) {
         this.executor = executor;
-        vm = new VirtualMachine(code, 1048576, StandardLibrary.getFunctions());
+        DecodedCode decodedCode = DecodedCode.decode(code);
+        DirectByteBuffer memory = DirectByteBuffer.allocate(1048576);
+        decodedCode.loadStaticData(memory);
+        vm = new VirtualMachine(decodedCode, memory, StandardLibrary.getFunctions(), ExecutionMode.TIERED);
         channels = new ArrayList<>();
+        regions = new ConcurrentHashMap<>();
     }
 
     /**
-     * Periodically performed task
+     * Receives data from bound sources, is called between frames when no ant is running.
+     * A suspended program does not receive data until it is completed
      */
-    void tick() {
+    void receive() {
+        if (vm.isSuspended())
+            return;
         for (Channel channel : channels) {
             channel.transmit();
         }
-        vm.run();
     }
 
     /**
-     * Read data by absolute address
+     * Runs the program of the ant or resumes it if it was suspended in the previous frame, ants can run in parallel
+     */
+    void run() {
+        if (vm.run(instructionsPerFrame)) {
+            for (DataRegion region : regions.values()) {
+                region.update(vm);
+            }
+        }
+    }
+
+    /**
+     * Returns a region of memory that is read by channels, the region is created on first request.
+     * Channels of all executors can request regions, so the map is concurrent.
+     * The region is filled when the program is completed next time
      * @param address absolute address
      * @param size size
-     * @param buffer destination buffer
+     * @return the region
      */
-    void read(int address, int size, byte[] buffer) {
-        vm.read(address, size, buffer);
+    DataRegion getRegion(int address, int size) {
+        return regions.computeIfAbsent(((long) address << 32) | size, key -> new DataRegion(address, size));
     }
 
     /**
@@ -64,7 +89,14 @@ public class Ant {
         channels.add(channel);
     }
 
+    /**
+     * The budget of a frame, a program that is not completed within it continues in the next frame,
+     * so a long loop does not delay other ants
+     */
+    private static final long instructionsPerFrame = 1000000;
+
     private ServerExecutor executor;
     private VirtualMachine vm;
     private List<Channel> channels;
+    private Map<Long, DataRegion> regions;
 }
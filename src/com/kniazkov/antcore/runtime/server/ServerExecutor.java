@@ -19,7 +19,9 @@ package com.kniazkov.antcore.runtime.server;
 import com.kniazkov.antcore.basic.bytecode.Binding;
 import com.kniazkov.antcore.basic.bytecode.CompiledModule;
 import com.kniazkov.antcore.basic.bytecode.ShortAddress;
+import com.kniazkov.antcore.runtime.DataRegion;
 import com.kniazkov.antcore.runtime.Executor;
+import com.kniazkov.antcore.runtime.OverrunPolicy;
 import com.kniazkov.antcore.runtime.Runtime;
 
 import java.util.Map;
@@ -75,28 +77,34 @@ public class ServerExecutor extends Executor {
         return 100;
     }
 
+    @Override
+    protected OverrunPolicy getOverrunPolicy() {
+        // under load the frequency decreases instead of queueing of frames
+        return OverrunPolicy.ADAPT;
+    }
+
     @Override
     protected boolean tick() {
         if (antList == null)
             return false;
 
+        // all the data is transmitted before ants run, so the result does not depend on the order of ants
         for (Ant ant : antList) {
-            ant.tick();
+            ant.receive();
         }
+        getRuntime().getScheduler().forEach(antList, Ant::run);
 
         return true;
     }
 
     @Override
-    public boolean read(ShortAddress address, int size, byte[] buffer) {
+    public DataRegion getRegion(ShortAddress address, int size) {
         if (antMap != null) {
             Ant ant = antMap.get(address.getModule());
-            if (ant != null) {
-                ant.read(address.getOffset(), size, buffer);
-                return true;
-            }
+            if (ant != null)
+                return ant.getRegion(address.getOffset(), size);
         }
-        return false;
+        return null;
     }
 
     Ant[] antList;
@@ -17,29 +17,41 @@
 package com.kniazkov.antcore.runtime.web;
 
 import com.kniazkov.antcore.basic.bytecode.Binding;
+import com.kniazkov.antcore.basic.virtualmachine.ExecutionMode;
 import com.kniazkov.antcore.basic.virtualmachine.VirtualMachine;
-import com.kniazkov.antcore.lib.ByteList;
+import com.kniazkov.antcore.lib.PagedByteBuffer;
 import com.kniazkov.antcore.runtime.Channel;
+import com.kniazkov.antcore.runtime.DataRegion;
+import com.kniazkov.json.JsonObject;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * An ant, i.e. minimal execution unit that contains own memory space
  */
 public class Ant {
-    public Ant(long timestamp, String module, WebExecutor executor, ByteList code, List<Binding> mapping) {
+    Ant(long timestamp, String module, WebExecutor executor, ModuleInfo info) {
         this.timestamp = timestamp;
         this.module = module;
-        vm = new VirtualMachine(code, 65536, WebLibrary.create(this));
+        vm = new VirtualMachine(info.code, new PagedByteBuffer(info.image), WebLibrary.create(this),
+                ExecutionMode.TIERED);
         uid = UUID.randomUUID().toString();
 
         channels = new ArrayList<>();
-        for (Binding binding : mapping) {
+        for (Binding binding : info.mapping) {
             Channel channel = new Channel(executor.getRuntime(), vm, binding);
             channels.add(channel);
         }
+        regions = new ConcurrentHashMap<>();
 
         instructions = new LinkedList<>();
+        sessions = executor.getSessionExecutor();
+        mailbox = new ConcurrentLinkedQueue<>();
+        scheduled = new AtomicBoolean();
 
         widgets = new TreeMap<>();
         widgetId = 0;
@@ -47,13 +59,120 @@ public class Ant {
     }
 
     /**
-     * Periodically performed task
+     * Periodically performed task, runs the program or resumes it if it was suspended
      */
-    public void tick() {
-        for (Channel channel : channels) {
-            channel.transmit();
+    public synchronized void tick() {
+        if (released)
+            return;
+        if (!vm.isSuspended()) {
+            for (Channel channel : channels) {
+                channel.transmit();
+            }
+        }
+        if (vm.run(instructionsPerTick))
+            updateRegions();
+    }
+
+    /**
+     * Refreshes regions read by channels, the program must not be running or suspended
+     */
+    private synchronized void updateRegions() {
+        if (released || vm.isSuspended())
+            return;
+        for (DataRegion region : regions.values()) {
+            region.update(vm);
+        }
+    }
+
+    /**
+     * Passes events of the web page to widgets and runs the program. Widgets are used by the program,
+     * so events are handled under the same lock as ticks, including ticks that resume a suspended program
+     * @param events the events
+     */
+    synchronized void handleEvents(List<JsonObject> events) {
+        for (JsonObject event : events) {
+            int widgetId = event.get("widget").intValue();
+            Widget widget = widgets.get(widgetId);
+            if (widget != null) {
+                widget.handleEvent(event.get("type").stringValue(), event);
+            }
+        }
+        tick();
+    }
+
+    /**
+     * @return true if the program was suspended and must be resumed by the next tick
+     */
+    synchronized boolean isSuspended() {
+        return !released && vm.isSuspended();
+    }
+
+    /**
+     * Posts a message to the mailbox of the ant. Messages are handled one by one in order of posting
+     * by the threads of sessions, so the ant does not occupy a thread while it waits for messages
+     * @param message the message
+     */
+    void post(Runnable message) {
+        mailbox.add(message);
+        if (scheduled.compareAndSet(false, true))
+            sessions.execute(this::handleMessages);
+    }
+
+    private void handleMessages() {
+        try {
+            Runnable message;
+            while ((message = mailbox.poll()) != null)
+                message.run();
+        } finally {
+            scheduled.set(false);
+            // a message could be posted after the mailbox was found empty, but before the flag was reset
+            if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true))
+                sessions.execute(this::handleMessages);
+        }
+    }
+
+    /**
+     * Adds an instruction for the web page
+     * @param instruction the instruction
+     */
+    void addInstruction(Instruction instruction) {
+        synchronized (instructions) {
+            instructions.add(instruction);
+        }
+    }
+
+    /**
+     * Removes instructions that are already processed by the web page
+     * @param processed unique identifiers of processed instructions
+     */
+    void removeProcessedInstructions(Set<String> processed) {
+        synchronized (instructions) {
+            instructions.removeIf(instruction -> processed.contains(instruction.getUId()));
+        }
+    }
+
+    /**
+     * @param limit maximal number of instructions
+     * @return instructions that are not processed yet
+     */
+    List<Instruction> getInstructions(int limit) {
+        synchronized (instructions) {
+            List<Instruction> result = new ArrayList<>(Math.min(limit, instructions.size()));
+            Iterator<Instruction> iterator = instructions.iterator();
+            while (result.size() < limit && iterator.hasNext())
+                result.add(iterator.next());
+            return result;
+        }
+    }
+
+    /**
+     * Releases the memory of the ant when it dies
+     */
+    synchronized void release() {
+        if (!released) {
+            released = true;
+            vm.release();
         }
-        vm.run();
     }
 
     public String getUId() {
@@ -61,13 +180,27 @@ public class Ant {
     }
 
     /**
-     * Read data by absolute address
+     * Returns a region of memory that is read by channels, the region is created on first request.
+     * Channels of other executors call it, so it does not wait for the program; a new region is filled
+     * by the threads of sessions since the program may not run again until the next event
      * @param address absolute address
      * @param size size
-     * @param buffer destination buffer
+     * @return the region or null if the ant is already died
      */
-    public void read(int address, int size, byte[] buffer) {
-        vm.read(address, size, buffer);
+    DataRegion getRegion(int address, int size) {
+        if (released)
+            return null;
+        long key = ((long) address << 32) | size;
+        DataRegion region = regions.get(key);
+        if (region == null) {
+            DataRegion created = new DataRegion(address, size);
+            region = regions.putIfAbsent(key, created);
+            if (region == null) {
+                region = created;
+                sessions.execute(this::updateRegions);
+            }
+        }
+        return region;
     }
 
     public String getModuleName() {
@@ -97,13 +230,23 @@ public class Ant {
         return widget;
     }
 
+    /**
+     * The budget of a tick, a program that is not completed within it is resumed by the executor
+     */
+    private static final long instructionsPerTick = 1000000;
+
     long timestamp;
     int transaction;
     private String module;
     private List<Channel> channels;
+    private Map<Long, DataRegion> regions;
     private VirtualMachine vm;
+    private volatile boolean released;
     private String uid;
-    List<Instruction> instructions;
+    private final List<Instruction> instructions;
+    private final ExecutorService sessions;
+    private final Queue<Runnable> mailbox;
+    private final AtomicBoolean scheduled;
     Map<Integer, Widget> widgets;
     private int widgetId;
 }
@@ -42,7 +42,7 @@ public class CreateInstance extends Respondent {
 
         String page = pageElem.stringValue();
         ModuleInfo info = executor.getModuleByName(page);
-        Ant ant = new Ant(executor.getTicks(), page, executor, info.module.getBytecode(), info.mapping);
+        Ant ant = new Ant(executor.getTicks(), page, executor, info);
         String uid = ant.getUId();
         executor.antsByUId.put(uid, ant);
         executor.antsByModule.get(page).add(ant);
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.runtime.web;
+
+import com.kniazkov.antcore.runtime.Executor;
+import com.kniazkov.antcore.runtime.Statistics;
+import com.kniazkov.json.JsonElement;
+import com.kniazkov.json.JsonObject;
+import com.kniazkov.webserver.Response;
+import com.kniazkov.webserver.ResponseJson;
+
+/**
+ * The 'statistics' respondent, reports timing of ticks of all executors
+ */
+public class GetStatistics extends Respondent {
+    public GetStatistics(WebExecutor executor) {
+        super(executor);
+    }
+
+    @Override
+    public Response respond(JsonElement data) {
+        JsonObject result = new JsonObject(null);
+        for (Executor item : executor.getRuntime().getExecutors()) {
+            Statistics statistics = item.getStatistics();
+            if (statistics != null) {
+                JsonObject obj = result.createObject(item.getName());
+                obj.createNumber("ticks", statistics.getFrames());
+                obj.createNumber("overruns", statistics.getOverruns());
+                obj.createNumber("skipped", statistics.getSkippedFrames());
+                obj.createNumber("average duration", statistics.getAverageDuration() / 1e6);
+                obj.createNumber("max duration", statistics.getMaxDuration() / 1e6);
+                obj.createNumber("max lateness", statistics.getMaxLateness() / 1e6);
+                obj.createNumber("frequency", 1e9 / statistics.getPeriod());
+            }
+        }
+        return new ResponseJson(result);
+    }
+}
@@ -35,6 +35,7 @@ public class Handler implements com.kniazkov.webserver.Handler {
         respondents.put("hello", new Hello(executor));
         respondents.put("create instance", new CreateInstance(executor));
         respondents.put("update", new Update(executor));
+        respondents.put("statistics", new GetStatistics(executor));
     }
 
     @Override
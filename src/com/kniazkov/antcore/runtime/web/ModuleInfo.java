@@ -18,6 +18,8 @@ package com.kniazkov.antcore.runtime.web;
 
 import com.kniazkov.antcore.basic.bytecode.Binding;
 import com.kniazkov.antcore.basic.bytecode.CompiledModule;
+import com.kniazkov.antcore.basic.virtualmachine.DecodedCode;
+import com.kniazkov.antcore.lib.PagedByteBuffer;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -28,8 +30,16 @@ import java.util.List;
 class ModuleInfo {
     CompiledModule module;
     List<Binding> mapping;
+    DecodedCode code;
+    PagedByteBuffer image;  // the initial memory state shared by all ants of the module
 
-    ModuleInfo() {
+    ModuleInfo(CompiledModule module) {
+        this.module = module;
         mapping = new ArrayList<>();
+        code = DecodedCode.decode(module.getBytecode());
+        image = new PagedByteBuffer(memorySize);
+        code.loadStaticData(image);
     }
+
+    static final int memorySize = 65536;
 }
@@ -68,19 +68,14 @@ public class Update extends Respondent {
                         String processedId = processedArray.getAt(k).stringValue();
                         processedSet.add(processedId);
                     }
-                    List<Instruction> tmp = new LinkedList<>();
-                    for (Instruction instruction : ant.instructions) {
-                        if (!processedSet.contains(instruction.getUId())) {
-                            tmp.add(instruction);
-                        }
-                    }
-                    ant.instructions = tmp;
+                    ant.removeProcessedInstructions(processedSet);
                 }
             }
         }
 
         JsonElement eventsElem = obj.get("events");
         if (eventsElem != null) {
+            List<JsonObject> events = new ArrayList<>();
             JsonArray eventsArray = eventsElem.toJsonArray();
             if (eventsArray != null) {
                 count = eventsArray.size();
@@ -91,27 +86,26 @@ public class Update extends Respondent {
                         assert (event != null);
                         String eventId = event.get("uid").stringValue();
                         handled.createString(eventId);
-                        int widgetId = event.get("widget").intValue();
-                        Widget widget = ant.widgets.get(widgetId);
-                        if (widget != null) {
-                            widget.handleEvent(event.get("type").stringValue(), event);
-                        }
+                        events.add(event);
                     }
                 }
             }
 
-            ant.tick();
+            Runnable handler = () -> ant.handleEvents(events);
+            if (executor.hasAsynchronousSessions()) {
+                // the program is executed by the session itself, new instructions will be sent
+                // in response to one of the next requests
+                ant.post(handler);
+            }
+            else {
+                handler.run();
+            }
 
             result.createNumber("transaction", transaction);
-            count = ant.instructions.size();
-            if (count > maxInstructionsCount) count = maxInstructionsCount;
-            if (count > 0) {
+            List<Instruction> instructions = ant.getInstructions(maxInstructionsCount);
+            if (!instructions.isEmpty()) {
                 JsonArray jsonInstructions = result.createArray("instructions");
-                k = 0;
-                Iterator<Instruction> iterator = ant.instructions.iterator();
-                while (k < count && iterator.hasNext()) {
-                    k++;
-                    Instruction instruction = iterator.next();
+                for (Instruction instruction : instructions) {
                     JsonObject jsonInstruction = jsonInstructions.createObject();
                     instruction.toJsonObject(jsonInstruction);
                 }
@@ -19,6 +19,7 @@ package com.kniazkov.antcore.runtime.web;
 import com.kniazkov.antcore.basic.bytecode.Binding;
 import com.kniazkov.antcore.basic.bytecode.CompiledModule;
 import com.kniazkov.antcore.basic.bytecode.ShortAddress;
+import com.kniazkov.antcore.runtime.DataRegion;
 import com.kniazkov.antcore.runtime.Executor;
 import com.kniazkov.antcore.runtime.Runtime;
 import com.kniazkov.webserver.*;
@@ -29,6 +30,8 @@ import java.util.Map;
 import java.util.TreeMap;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The 'WEB' executor (i.e. web interface)
@@ -38,6 +41,8 @@ public class WebExecutor extends Executor {
         super(runtime);
         this.antsByUId = new TreeMap<>();
         this.antsByModule = new TreeMap<>();
+        this.sessions = Executors.newFixedThreadPool(java.lang.Runtime.getRuntime().availableProcessors(),
+                runnable -> new Thread(runnable, "Antcore session"));
     }
 
     @Override
@@ -58,9 +63,20 @@ public class WebExecutor extends Executor {
             for (String uid : died) {
                 Ant ant = antsByUId.remove(uid);
                 antsByModule.get(ant.getModuleName()).remove(ant);
+                ant.release();
                 System.out.println("The ant '" + uid + "' died, population: " + antsByUId.size());
             }
         }
+
+        // programs that exhausted their budgets continue without waiting for requests
+        for (Ant ant : antsByUId.values()) {
+            if (ant.isSuspended()) {
+                if (asynchronousSessions)
+                    ant.post(ant::tick);
+                else
+                    ant.tick();
+            }
+        }
         return true;
     }
 
@@ -74,8 +90,7 @@ public class WebExecutor extends Executor {
         this.modules = new TreeMap<>();
         for (CompiledModule module : modules) {
             String name = module.getName();
-            ModuleInfo info = new ModuleInfo();
-            info.module = module;
+            ModuleInfo info = new ModuleInfo(module);
             this.modules.put(name, info);
             this.antsByModule.put(name, new HashSet<>());
         }
@@ -103,14 +118,38 @@ public class WebExecutor extends Executor {
     }
 
     @Override
-    public boolean read(ShortAddress address, int size, byte[] buffer) {
+    public DataRegion getRegion(ShortAddress address, int size) {
         Set<Ant> ants = antsByModule.get(address.getModule());
         if (ants.size() == 1) { // If there more than one copy of the page, we can not read data from them
             Ant ant = ants.iterator().next();
-            ant.read(address.getOffset(), size, buffer);
-            return true;
+            return ant.getRegion(address.getOffset(), size);
         }
-        return false;
+        return null;
+    }
+
+    /**
+     * Sets the mode of sessions. In the asynchronous mode the program of an ant is executed by the ant itself,
+     * and the HTTP thread only posts events and returns instructions produced so far, so a slow page
+     * never blocks the threads of the web server
+     * @param asynchronous true for the asynchronous mode
+     */
+    public void setAsynchronousSessions(boolean asynchronous) {
+        asynchronousSessions = asynchronous;
+    }
+
+    /**
+     * @return true if programs of ants are executed asynchronously
+     */
+    boolean hasAsynchronousSessions() {
+        return asynchronousSessions;
+    }
+
+    /**
+     * @return threads that handle mailboxes of ants, they are separated from the pool of the scheduler,
+     * so programs of web pages never delay frames of other executors
+     */
+    ExecutorService getSessionExecutor() {
+        return sessions;
     }
 
     ModuleInfo getModuleByName(String name) {
@@ -120,6 +159,8 @@ public class WebExecutor extends Executor {
     private static final long antsLifetime = 10;
 
     private Map<String, ModuleInfo> modules;
+    private volatile boolean asynchronousSessions;
+    private final ExecutorService sessions;
     Server webServer;
     Map<String, Ant> antsByUId;
     Map<String, Set<Ant>> antsByModule;
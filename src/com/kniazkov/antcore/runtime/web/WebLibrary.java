@@ -24,16 +24,14 @@ public class WebLibrary {
 
         functions.put("print", (memory, SP) -> {
             int address = memory.getInt(SP + 4);
-            StringData stringData = StringData.read(memory, address);
-            ant.instructions.add(new Print(stringData.toString()));
+            ant.addInstruction(new Print(StringData.getString(memory, address)));
         });
 
         functions.put("createWidget", (memory, SP) -> {
             int address = memory.getInt(SP + 4);
-            StringData type = StringData.read(memory, address);
-            Widget widget = ant.createWidget(type.toString());
+            Widget widget = ant.createWidget(StringData.getString(memory, address));
             if (widget != null) {
-                ant.instructions.add(new CreateWidget(widget.getId(), widget.getType()));
+                ant.addInstruction(new CreateWidget(widget.getId(), widget.getType()));
                 memory.setInt(SP + 4 + 4, widget.getId());
             }
             else {
@@ -50,7 +48,7 @@ public class WebLibrary {
             if (container != null && widget != null) {
                 result = container.appendChild(widget);
                 if (result) {
-                    ant.instructions.add(new AppendWidget(containerId, widgetId));
+                    ant.addInstruction(new AppendWidget(containerId, widgetId));
                 }
             }
             memory.set(SP + 12, (byte) (result ? 1 : 0));
@@ -59,14 +57,13 @@ public class WebLibrary {
         functions.put("setWidgetData", (memory, SP) -> {
             int widgetId = memory.getInt(SP + 4);
             int address = memory.getInt(SP + 8);
-            StringData data = StringData.read(memory, address);
-            String dataStr = data.toString();
+            String dataStr = StringData.getString(memory, address);
             Widget widget = ant.widgets.get(widgetId);
             boolean result = false;
             if (widget != null) {
                 result = widget.setData(dataStr);
                 if (result) {
-                    ant.instructions.add(new SetWidgetData(widgetId, dataStr));
+                    ant.addInstruction(new SetWidgetData(widgetId, dataStr));
                 }
             }
             memory.set(SP + 12, (byte) (result ? 1 : 0));
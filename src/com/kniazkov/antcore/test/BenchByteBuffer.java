@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.test;
+
+import com.kniazkov.antcore.lib.ByteBuffer;
+
+/**
+ * Microbenchmark for word-wide access of ByteBuffer class.
+ * Simulates the stack of the virtual machine: pushes and pops 4- and 8-byte values
+ * and compares the ByteBuffer accessors with assembling the values byte by byte
+ */
+public class BenchByteBuffer {
+    public static void main(String[] args) {
+        final int size = 65536;
+        final int rounds = 7;
+        final int iterations = 2000;
+
+        ByteBuffer buffer = new ByteBuffer(size);
+        byte[] array = new byte[size];
+        long checksum0 = 0, checksum1 = 0;
+        for (int round = 0; round < rounds; round++) {
+            long begin = System.nanoTime();
+            for (int k = 0; k < iterations; k++)
+                checksum0 += runBuffer(buffer, size, k);
+            long middle = System.nanoTime();
+            for (int k = 0; k < iterations; k++)
+                checksum1 += runBytes(array, size, k);
+            long end = System.nanoTime();
+            System.out.println("round " + (round + 1) + ": ByteBuffer " + (middle - begin) / 1000000 +
+                    " ms, byte by byte " + (end - middle) / 1000000 + " ms");
+        }
+        if (checksum0 != checksum1)
+            System.out.println("Checksums do not match: " + checksum0 + " != " + checksum1);
+    }
+
+    private static long runBuffer(ByteBuffer buffer, int size, int seed) {
+        int SP = size;
+        long value = seed;
+        while (SP >= 12) {
+            SP = SP - 8;
+            buffer.setLong(SP, value);
+            SP = SP - 4;
+            buffer.setInt(SP, (int) value);
+            value = value * 31 + 7;
+        }
+        long result = 0;
+        while (SP + 12 <= size) {
+            result += buffer.getInt(SP);
+            SP = SP + 4;
+            result ^= buffer.getLong(SP);
+            SP = SP + 8;
+        }
+        return result;
+    }
+
+    private static long runBytes(byte[] data, int size, int seed) {
+        int SP = size;
+        long value = seed;
+        while (SP >= 12) {
+            SP = SP - 8;
+            setLong(data, SP, value);
+            SP = SP - 4;
+            setInt(data, SP, (int) value);
+            value = value * 31 + 7;
+        }
+        long result = 0;
+        while (SP + 12 <= size) {
+            result += getInt(data, SP);
+            SP = SP + 4;
+            result ^= getLong(data, SP);
+            SP = SP + 8;
+        }
+        return result;
+    }
+
+    private static int getInt(byte[] data, int index) {
+        return (data[index] & 0xFF) | ((data[index + 1] & 0xFF) << 8) |
+                ((data[index + 2] & 0xFF) << 16) | ((data[index + 3] & 0xFF) << 24);
+    }
+
+    private static void setInt(byte[] data, int index, int value) {
+        data[index++] = (byte)(value);
+        data[index++] = (byte)(value >> 8);
+        data[index++] = (byte)(value >> 16);
+        data[index]   = (byte)(value >> 24);
+    }
+
+    private static long getLong(byte[] data, int index) {
+        return ((long)data[index] & 0xFF) | ((long)(data[index + 1] & 0xFF) << 8) |
+                ((long)(data[index + 2] & 0xFF) << 16) | ((long)(data[index + 3] & 0xFF) << 24) |
+                ((long)(data[index + 4] & 0xFF) << 32) | ((long)(data[index + 5] & 0xFF) << 40) |
+                ((long)(data[index + 6] & 0xFF) << 48) | ((long)(data[index + 7] & 0xFF) << 56);
+    }
+
+    private static void setLong(byte[] data, int index, long value) {
+        data[index++] = (byte)(value);
+        data[index++] = (byte)(value >> 8);
+        data[index++] = (byte)(value >> 16);
+        data[index++] = (byte)(value >> 24);
+        data[index++] = (byte)(value >> 32);
+        data[index++] = (byte)(value >> 40);
+        data[index++] = (byte)(value >> 48);
+        data[index]   = (byte)(value >> 56);
+    }
+}
@@ -16,8 +16,10 @@
  */
 package com.kniazkov.antcore.test;
 
+import com.kniazkov.antcore.basic.bytecode.BytecodeFormat;
 import com.kniazkov.antcore.basic.bytecode.CompiledModule;
 import com.kniazkov.antcore.basic.bytecode.CompiledProgram;
+import com.kniazkov.antcore.basic.common.CompilerOptions;
 import com.kniazkov.antcore.basic.common.SyntaxError;
 import com.kniazkov.antcore.basic.graph.Analyzer;
 import com.kniazkov.antcore.basic.graph.Program;
@@ -27,6 +29,8 @@ import com.kniazkov.antcore.lib.ByteBuffer;
 import com.kniazkov.antcore.lib.FileIO;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -60,48 +64,87 @@ public class TestBasic {
         Print fakeOutput = new Print();
         stdlib.put("print", fakeOutput);
 
+        List<CompilerOptions> configurations = new ArrayList<>();
+        for (BytecodeFormat format : BytecodeFormat.values()) {
+            for (boolean registerMode : new boolean[] { false, true }) {
+                CompilerOptions options = new CompilerOptions();
+                options.setBytecodeFormat(format);
+                options.setRegisterMode(registerMode);
+                configurations.add(options);
+            }
+        }
+
         File testFolder = new File("tests/basic");
         for (File test : testFolder.listFiles()) {
             if (test.isDirectory()) {
                 String name = test.getName();
                 String source = FileIO.readFileToString("tests/basic/" + name + "/program.txt");
                 if (source != null) {
-                    try {
-                        Program program = Parser.parse(null, source);
-                        Analyzer.analyze(program);
-                        CompiledProgram compiledProgram = program.compile();
-                        CompiledModule[] modules =  compiledProgram.getModulesByExecutor("SERVER");
-                        if (modules == null || modules.length != 1) {
-                            failed++;
-                            System.out.println(name + ": bad test");
-                        }
-                        else {
-                            fakeOutput.reset();
-                            VirtualMachine virtualMachine = new VirtualMachine(modules[0].getBytecode(),
-                                    65536,
-                                    stdlib);
-                            virtualMachine.run();
-                            ErrorCode errorCode = virtualMachine.getErrorCode();
-                            if (errorCode != ErrorCode.OK) {
+                    for (CompilerOptions options : configurations) {
+                        try {
+                            Program program = Parser.parse(null, source);
+                            Analyzer.analyze(program);
+                            CompiledProgram compiledProgram = program.compile(options);
+                            CompiledModule[] modules =  compiledProgram.getModulesByExecutor("SERVER");
+                            if (modules == null || modules.length != 1) {
                                 failed++;
-                                System.out.println(name + ": VM failed " + errorCode);
-                            }
-                            String expectedResult = FileIO.readFileToString("tests/basic/" + name + "/output.txt");
-                            String actualResult = fakeOutput.getData();
-                            if (expectedResult != null && expectedResult.equals(actualResult)) {
-                                passed++;
-                                System.out.println(name + ": passed");
+                                System.out.println(name + ": bad test");
                             }
                             else {
-                                failed++;
-                                System.out.println(name + ": does not match");
-                                FileIO.writeStringToFile("tests/basic/" + name + "/actual_output.txt",
-                                        actualResult);
+                                DecodedCode code = DecodedCode.decode(modules[0].getBytecode());
+                                // functions are compiled on the second call or loop iteration in the tiered mode
+                                code.setCompileThreshold(2);
+                                for (ExecutionMode mode : ExecutionMode.values()) {
+                                    // the program runs at once or instruction by instruction, resuming after each one
+                                    for (boolean sliced : new boolean[] { false, true }) {
+                                        String title = name + " [" + mode + ", " + options.getBytecodeFormat()
+                                                + (options.isRegisterMode() ? ", registers" : "")
+                                                + (sliced ? ", sliced" : "") + "]";
+                                        fakeOutput.reset();
+                                        String actualResult;
+                                        try {
+                                            // the same memory size as a server ant has, so deep recursion fits
+                                            VirtualMachine virtualMachine = new VirtualMachine(code,
+                                                    1048576,
+                                                    stdlib,
+                                                    mode);
+                                            if (sliced) {
+                                                while (!virtualMachine.run(1)) {
+                                                    // the budget is exhausted, the machine resumes from the same state
+                                                }
+                                            }
+                                            else {
+                                                virtualMachine.run();
+                                            }
+                                            ErrorCode errorCode = virtualMachine.getErrorCode();
+                                            if (errorCode != ErrorCode.OK) {
+                                                failed++;
+                                                System.out.println(title + ": VM failed " + errorCode);
+                                            }
+                                            actualResult = fakeOutput.getData();
+                                        } catch (NativeFunctionNotFound exception) {
+                                            // the expected output of a program that can not be loaded is the message of the error
+                                            actualResult = exception.getMessage();
+                                        }
+                                        String expectedResult = FileIO.readFileToString("tests/basic/" + name + "/output.txt");
+                                        if (expectedResult != null && expectedResult.equals(actualResult)) {
+                                            passed++;
+                                            System.out.println(title + ": passed");
+                                        }
+                                        else {
+                                            failed++;
+                                            System.out.println(title + ": does not match");
+                                            FileIO.writeStringToFile("tests/basic/" + name + "/actual_output.txt",
+                                                    actualResult);
+                                        }
+                                    }
+                                }
                             }
+                        } catch (SyntaxError syntaxError) {
+                            failed++;
+                            System.out.println(name + ": " + syntaxError.toString());
+                            break;
                         }
-                    } catch (SyntaxError syntaxError) {
-                        failed++;
-                        System.out.println(name + ": " + syntaxError.toString());
                     }
                 }
                 else {
@@ -17,13 +17,35 @@
 package com.kniazkov.antcore.test;
 
 import com.kniazkov.antcore.lib.ByteBuffer;
+import com.kniazkov.antcore.lib.DirectByteBuffer;
+import com.kniazkov.antcore.lib.PagedByteBuffer;
 
 /**
  * Tests for ByteBuffer class
  */
 public class TestByteBuffer {
     public static void main(String[] args) {
-        ByteBuffer buff = new ByteBuffer(12);
+        test(new ByteBuffer(24));
+        DirectByteBuffer direct = DirectByteBuffer.allocate(24);
+        test(direct);
+        direct.release();
+        test(DirectByteBuffer.allocate(24));
+        test(new PagedByteBuffer(24));
+
+        PagedByteBuffer paged = new PagedByteBuffer(65536);
+        paged.setLong(4092, 0x0102030405060708L);
+        paged.move(4092, 65528, 8);
+        System.out.println(paged.getLong(65528) == 0x0102030405060708L);
+        System.out.println(paged.getCommittedSize());
+
+        PagedByteBuffer copy = new PagedByteBuffer(paged);
+        System.out.println(copy.getCommittedSize());
+        copy.setInt(65528, 777);
+        System.out.println(copy.getInt(65528) + " " + paged.getInt(65528) + " " + copy.getCommittedSize());
+    }
+
+    private static void test(ByteBuffer buff) {
+        System.out.println(buff.getLong(16));
         buff.setInt(0, 132);
         buff.setInt(4, -1234567);
         System.out.println(buff.getInt(0));
@@ -32,5 +54,11 @@ public class TestByteBuffer {
         buff.setChar(10, 'Ж');
         System.out.println(buff.getChar(8));
         System.out.println(buff.getChar(10));
+        buff.setShort(12, (short) -12345);
+        System.out.println(buff.getShort(12));
+        System.out.println(buff.get(12) + " " + buff.get(13));
+        buff.setLong(16, -1234567890123456789L);
+        System.out.println(buff.getLong(16));
+        System.out.println(buff.getInt(16) + " " + buff.getInt(20));
     }
 }
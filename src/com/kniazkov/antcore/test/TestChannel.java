@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2020 Ivan Kniazkov
+ *
+ * This file is part of Antcore.
+ *
+ * Antcore is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Antcore is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Antcore.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kniazkov.antcore.test;
+
+import com.kniazkov.antcore.basic.bytecode.Binding;
+import com.kniazkov.antcore.basic.bytecode.CompiledModule;
+import com.kniazkov.antcore.basic.bytecode.FullAddress;
+import com.kniazkov.antcore.basic.bytecode.ShortAddress;
+import com.kniazkov.antcore.basic.common.SyntaxError;
+import com.kniazkov.antcore.basic.graph.Analyzer;
+import com.kniazkov.antcore.basic.graph.Program;
+import com.kniazkov.antcore.basic.parser.Parser;
+import com.kniazkov.antcore.basic.virtualmachine.DecodedCode;
+import com.kniazkov.antcore.basic.virtualmachine.ExecutionMode;
+import com.kniazkov.antcore.basic.virtualmachine.StandardLibrary;
+import com.kniazkov.antcore.basic.virtualmachine.VirtualMachine;
+import com.kniazkov.antcore.runtime.Channel;
+import com.kniazkov.antcore.runtime.DataRegion;
+import com.kniazkov.antcore.runtime.Executor;
+import com.kniazkov.antcore.runtime.Runtime;
+
+import java.util.Arrays;
+
+/**
+ * Tests for Channel class
+ */
+public class TestChannel {
+    public static void main(String[] args) throws SyntaxError {
+        Program program = Parser.parse(null, "MODULE SERVER\n\tFUNCTION MAIN\n\tEND FUNCTION\nEND MODULE\n");
+        Analyzer.analyze(program);
+        CompiledModule module = program.compile().getModulesByExecutor("SERVER")[0];
+        DecodedCode code = DecodedCode.decode(module.getBytecode());
+        VirtualMachine source = new VirtualMachine(code, 65536, StandardLibrary.getFunctions(), ExecutionMode.TABLE);
+        VirtualMachine receiver = new VirtualMachine(code, 65536, StandardLibrary.getFunctions(), ExecutionMode.TABLE);
+
+        DataRegion region = new DataRegion(sourceAddress, size);
+        Runtime runtime = new Runtime();
+        runtime.addExecutor(new Source(runtime, region));
+        Channel channel = new Channel(runtime, receiver, new Binding(
+                new FullAddress("SOURCE", "A", sourceAddress),
+                new FullAddress("SERVER", "B", receiverAddress), size));
+
+        // the first transmission writes the whole region, the next one writes the changed span only
+        source.write(sourceAddress, 4, new byte[] { 1, 2, 3, 4 });
+        region.update(source);
+        channel.transmit();
+        check("whole region", source, receiver);
+        source.write(sourceAddress + 8, 2, new byte[] { 5, 6 });
+        region.update(source);
+        channel.transmit();
+        check("changed span", source, receiver);
+
+        // the receiver writes to its input, the data of the source must be restored
+        receiver.write(receiverAddress + 1, 2, new byte[] { 77, 77 });
+        source.write(sourceAddress + 12, 1, new byte[] { 7 });
+        region.update(source);
+        channel.transmit();
+        check("input written by receiver, source changed", source, receiver);
+        receiver.write(receiverAddress + 15, 1, new byte[] { 77 });
+        channel.transmit();
+        check("input written by receiver, source not changed", source, receiver);
+    }
+
+    private static void check(String title, VirtualMachine source, VirtualMachine receiver) {
+        byte[] expected = new byte[size];
+        byte[] actual = new byte[size];
+        source.read(sourceAddress, size, expected);
+        receiver.read(receiverAddress, size, actual);
+        System.out.println(title + ": " + (Arrays.equals(expected, actual) ? "passed" : "failed"));
+    }
+
+    private static class Source extends Executor {
+        Source(Runtime runtime, DataRegion region) {
+            super(runtime);
+            this.region = region;
+        }
+
+        @Override
+        public String getName() {
+            return "SOURCE";
+        }
+
+        @Override
+        public void setModuleList(CompiledModule[] modules) {
+        }
+
+        @Override
+        public void setBindingByModule(Binding[] bindingByModule) {
+        }
+
+        @Override
+        public DataRegion getRegion(ShortAddress address, int size) {
+            return region;
+        }
+
+        @Override
+        protected void init() {
+        }
+
+        @Override
+        protected int getFrequency() {
+            return 1;
+        }
+
+        @Override
+        protected boolean tick() {
+            return false;
+        }
+
+        private final DataRegion region;
+    }
+
+    private static final int sourceAddress = 32768;
+    private static final int receiverAddress = 40960;
+    private static final int size = 16;
+}